@@ -0,0 +1,206 @@
+package io.dropwizard.bundles.assets.maven;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.google.common.base.CharMatcher;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+/**
+ * Precompresses the assets beneath the given resource paths of the build's output directory, and
+ * writes an index of their hashes, sizes, modification times and compressed siblings.  The
+ * {@code AssetServlet} of the configurable assets bundle loads the index at startup, so it neither
+ * hashes nor compresses indexed assets at runtime.
+ */
+@Mojo(name = "precompress", defaultPhase = LifecyclePhase.PROCESS_CLASSES, threadSafe = true)
+public class PrecompressMojo extends AbstractMojo {
+  /**
+   * Where the index is written, relative to the output directory; {@code AssetServlet} looks for
+   * it at the same path on the classpath.
+   */
+  static final String INDEX_LOCATION = "META-INF/assets-index.json";
+  static final int INDEX_VERSION = 1;
+
+  // Compressed siblings, by file extension, that AssetServlet serves as variants of an asset
+  private static final Map<String, String> SIBLING_ENCODINGS =
+      ImmutableMap.of(".br", "br", ".gz", "gzip");
+  private static final CharMatcher SLASHES = CharMatcher.is('/');
+
+  /**
+   * The directory the build's resources were copied to.
+   */
+  @Parameter(defaultValue = "${project.build.outputDirectory}", required = true)
+  File outputDirectory;
+
+  /**
+   * The resource paths used in the bundle's mappings, such as {@code /assets}.
+   */
+  @Parameter(required = true)
+  List<String> resourcePaths = ImmutableList.of();
+
+  /**
+   * Whether to write a gzip sibling for assets that do not already have one.
+   */
+  @Parameter(defaultValue = "true")
+  boolean gzip = true;
+
+  /**
+   * Gzip siblings that are not at least this much smaller than their asset are not written.
+   */
+  @Parameter(defaultValue = "0.9")
+  double maxCompressionRatio = 0.9;
+
+  @Parameter(property = "assets.precompress.skip", defaultValue = "false")
+  boolean skip = false;
+
+  @Override
+  public void execute() throws MojoExecutionException {
+    if (skip) {
+      getLog().info("Skipping asset precompression");
+      return;
+    }
+
+    Map<String, Object> assets = Maps.newTreeMap();
+    int compressed = 0;
+    try {
+      for (String resourcePath : resourcePaths) {
+        String trimmedPath = SLASHES.trimFrom(resourcePath);
+        File root = trimmedPath.isEmpty()
+            ? outputDirectory : new File(outputDirectory, trimmedPath);
+        if (!root.isDirectory()) {
+          getLog().warn("Resource path " + resourcePath + " is not a directory of "
+              + outputDirectory);
+          continue;
+        }
+
+        for (File file : Files.fileTreeTraverser().preOrderTraversal(root)) {
+          if (!file.isFile() || isSibling(file)) {
+            continue;
+          }
+
+          byte[] contents = Files.toByteArray(file);
+          if (gzip && writeGzipSibling(file, contents)) {
+            compressed++;
+          }
+          assets.put(resourcePathOf(file), index(file, contents));
+        }
+      }
+
+      File index = new File(outputDirectory, INDEX_LOCATION);
+      Files.createParentDirs(index);
+      new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(index,
+          ImmutableMap.of("version", INDEX_VERSION, "assets", assets));
+    } catch (IOException e) {
+      throw new MojoExecutionException("Unable to precompress assets", e);
+    }
+
+    getLog().info("Indexed " + assets.size() + " assets, compressing " + compressed);
+  }
+
+  /**
+   * Whether the file is a compressed sibling of another asset.
+   */
+  private static boolean isSibling(File file) {
+    for (String extension : SIBLING_ENCODINGS.keySet()) {
+      String path = file.getPath();
+      if (path.endsWith(extension)
+          && new File(path.substring(0, path.length() - extension.length())).isFile()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Writes a gzip sibling for the asset, unless it already has an up to date one or compression
+   * does not help.  A stale sibling left by an earlier build is replaced or removed.
+   *
+   * @return whether a sibling was written
+   */
+  private boolean writeGzipSibling(File file, byte[] contents) throws IOException {
+    File sibling = new File(file.getPath() + ".gz");
+    if (sibling.isFile() && Arrays.equals(gunzip(Files.toByteArray(sibling)), contents)) {
+      return false;
+    }
+
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream(contents.length / 2);
+    try (GZIPOutputStream output = new GZIPOutputStream(compressed)) {
+      output.write(contents);
+    }
+
+    if (compressed.size() > contents.length * maxCompressionRatio) {
+      if (sibling.exists() && !sibling.delete()) {
+        throw new IOException("Unable to delete stale sibling " + sibling);
+      }
+      return false;
+    }
+
+    Files.write(compressed.toByteArray(), sibling);
+    return true;
+  }
+
+  private static byte[] gunzip(byte[] compressed) {
+    try (GZIPInputStream input = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+      return ByteStreams.toByteArray(input);
+    } catch (IOException e) {
+      // Not a gzip file; it will be replaced
+      return null;
+    }
+  }
+
+  private Map<String, Object> index(File file, byte[] contents) throws IOException {
+    Map<String, Object> entry = Maps.newLinkedHashMap();
+    entry.put("hash", hash(contents));
+    entry.put("size", contents.length);
+    entry.put("lastModified", file.lastModified());
+
+    Map<String, Object> encodings = Maps.newTreeMap();
+    for (Map.Entry<String, String> extension : SIBLING_ENCODINGS.entrySet()) {
+      File sibling = new File(file.getPath() + extension.getKey());
+      if (sibling.isFile()) {
+        byte[] siblingContents = Files.toByteArray(sibling);
+        encodings.put(extension.getValue(), ImmutableMap.of(
+            "hash", hash(siblingContents),
+            "size", siblingContents.length));
+      }
+    }
+    if (!encodings.isEmpty()) {
+      entry.put("encodings", encodings);
+    }
+    return entry;
+  }
+
+  /**
+   * The hash AssetServlet puts in an asset's ETag.
+   */
+  private static String hash(byte[] contents) {
+    return Hashing.murmur3_128().hashBytes(contents).toString();
+  }
+
+  /**
+   * The path of a file on the classpath, relative to the output directory.
+   */
+  private String resourcePathOf(File file) {
+    String root = outputDirectory.getAbsoluteFile().toURI().getPath();
+    String path = file.getAbsoluteFile().toURI().getPath();
+    return path.substring(root.length());
+  }
+}
@@ -0,0 +1,37 @@
+package io.dropwizard.bundles.assets;
+
+/**
+ * Reads asset indexes the way {@link AssetServlet} does, so that the plugin's tests can check that
+ * the servlet understands the indexes the plugin writes.
+ */
+public final class AssetIndexReader {
+  private final AssetIndex index;
+
+  public AssetIndexReader(ClassLoader classLoader) {
+    this.index = AssetIndex.load(classLoader);
+  }
+
+  public boolean contains(String resourcePath) {
+    return index.get(resourcePath) != null;
+  }
+
+  public String hash(String resourcePath) {
+    return index.get(resourcePath).getHash();
+  }
+
+  public long size(String resourcePath) {
+    return index.get(resourcePath).getSize();
+  }
+
+  public long lastModified(String resourcePath) {
+    return index.get(resourcePath).getLastModified();
+  }
+
+  /**
+   * @return the size of the asset's sibling in the given content-coding, or null if it has none
+   */
+  public Long encodedSize(String resourcePath, String encoding) {
+    AssetIndex.Entry sibling = index.get(resourcePath).getEncodings().get(encoding);
+    return sibling == null ? null : sibling.getSize();
+  }
+}
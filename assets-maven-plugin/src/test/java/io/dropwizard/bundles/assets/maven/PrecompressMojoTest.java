@@ -0,0 +1,115 @@
+package io.dropwizard.bundles.assets.maven;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+import io.dropwizard.bundles.assets.AssetIndexReader;
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PrecompressMojoTest {
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  private final PrecompressMojo mojo = new PrecompressMojo();
+  private File classes;
+
+  @Before
+  public void setup() throws Exception {
+    classes = folder.newFolder("classes");
+    File assets = new File(classes, "assets/js");
+    assertThat(assets.mkdirs()).isTrue();
+    Files.write(Strings.repeat("var x = 1;\n", 100), new File(assets, "app.js"), Charsets.UTF_8);
+    Files.write("tiny", new File(assets, "tiny.txt"), Charsets.UTF_8);
+    Files.write("BROTLI", new File(assets, "app.js.br"), Charsets.UTF_8);
+    Files.write("NOT AN ASSET", new File(classes, "other.txt"), Charsets.UTF_8);
+
+    mojo.outputDirectory = classes;
+    mojo.resourcePaths = ImmutableList.of("/assets");
+  }
+
+  @Test
+  public void writesGzipSiblingsForCompressibleAssets() throws Exception {
+    mojo.execute();
+
+    assertThat(new File(classes, "assets/js/app.js.gz").isFile())
+            .isTrue();
+    assertThat(new File(classes, "assets/js/tiny.txt.gz").exists())
+            .isFalse();
+  }
+
+  @Test
+  public void indexesAssetsAndTheirSiblings() throws Exception {
+    mojo.execute();
+
+    JsonNode index = new ObjectMapper().readTree(
+            new File(classes, PrecompressMojo.INDEX_LOCATION));
+    assertThat(index.get("version").asInt())
+            .isEqualTo(PrecompressMojo.INDEX_VERSION);
+
+    JsonNode assets = index.get("assets");
+    assertThat(assets.has("other.txt"))
+            .isFalse();
+    assertThat(assets.has("assets/js/app.js.br"))
+            .isFalse();
+    assertThat(assets.get("assets/js/tiny.txt").get("size").asInt())
+            .isEqualTo(4);
+    assertThat(assets.get("assets/js/tiny.txt").has("encodings"))
+            .isFalse();
+
+    JsonNode app = assets.get("assets/js/app.js");
+    assertThat(app.get("size").asInt())
+            .isEqualTo(1100);
+    assertThat(app.get("hash").asText())
+            .hasSize(32);
+    assertThat(app.get("encodings").get("br").get("size").asInt())
+            .isEqualTo(6);
+    assertThat(app.get("encodings").get("gzip").get("size").asLong())
+            .isEqualTo(new File(classes, "assets/js/app.js.gz").length());
+  }
+
+  @Test
+  public void writesAnIndexTheBundleReads() throws Exception {
+    mojo.execute();
+
+    JsonNode written = new ObjectMapper().readTree(
+            new File(classes, PrecompressMojo.INDEX_LOCATION)).get("assets");
+    AssetIndexReader index = new AssetIndexReader(
+            new URLClassLoader(new URL[] {classes.toURI().toURL()}, null));
+    assertThat(index.contains("assets/js/app.js.br"))
+            .isFalse();
+    assertThat(index.size("assets/js/tiny.txt"))
+            .isEqualTo(4);
+    assertThat(index.encodedSize("assets/js/tiny.txt", "gzip"))
+            .isNull();
+    assertThat(index.hash("assets/js/app.js"))
+            .isEqualTo(written.get("assets/js/app.js").get("hash").asText());
+    assertThat(index.lastModified("assets/js/app.js"))
+            .isEqualTo(written.get("assets/js/app.js").get("lastModified").asLong());
+    assertThat(index.encodedSize("assets/js/app.js", "br"))
+            .isEqualTo(6);
+    assertThat(index.encodedSize("assets/js/app.js", "gzip"))
+            .isEqualTo(new File(classes, "assets/js/app.js.gz").length());
+  }
+
+  @Test
+  public void replacesStaleGzipSiblings() throws Exception {
+    File sibling = new File(classes, "assets/js/app.js.gz");
+    Files.write("STALE", sibling, Charsets.UTF_8);
+
+    mojo.execute();
+
+    assertThat(sibling.length())
+            .isNotEqualTo(5);
+  }
+}
@@ -0,0 +1,131 @@
+package io.dropwizard.bundles.assets;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Files;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the ways the servlet can hold and write an asset's body: cached on the heap, cached
+ * off-heap, memory-mapped from an override directory, mapped when sent, and streamed from disk on
+ * every request.  Each request goes through Jetty over a local socket and reads the body in full.
+ *
+ * <p>Only built and run with the {@code benchmarks} profile:
+ * {@code mvn -P benchmarks test-compile exec:exec}.  Run under
+ * {@code strace -f -c -e trace=write,writev} to compare the number of system calls as well.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class AssetServletBenchmark {
+  private static final long OFF_HEAP_BUDGET = 64 * 1024 * 1024;
+
+  /**
+   * How the servlet holds the body.
+   */
+  public enum Body {
+    HEAP, OFF_HEAP, MAPPED, TRANSFERRED, STREAMED
+  }
+
+  @Param({"16384", "131072", "1048576"})
+  public int size;
+
+  @Param
+  public Body body;
+
+  private File directory;
+  private Server server;
+  private URL url;
+  private final byte[] buffer = new byte[64 * 1024];
+
+  @Setup
+  public void start() throws Exception {
+    directory = Files.createTempDir();
+    byte[] contents = new byte[size];
+    new Random(size).nextBytes(contents);
+    Files.write(contents, new File(directory, "asset.bin"));
+
+    server = new Server();
+    ServerConnector connector = new ServerConnector(server);
+    server.addConnector(connector);
+    ServletContextHandler context = new ServletContextHandler();
+    context.addServlet(new ServletHolder(servlet()), "/assets/*");
+    server.setHandler(context);
+    server.start();
+
+    url = new URL("http://localhost:" + connector.getLocalPort() + "/assets/asset.bin");
+  }
+
+  @TearDown
+  public void stop() throws Exception {
+    server.stop();
+    new File(directory, "asset.bin").delete();
+    directory.delete();
+  }
+
+  @Benchmark
+  public long get() throws IOException {
+    long read = 0;
+    HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+    try (InputStream input = connection.getInputStream()) {
+      for (int count = input.read(buffer); count >= 0; count = input.read(buffer)) {
+        read += count;
+      }
+    }
+    return read;
+  }
+
+  private AssetServlet servlet() {
+    Iterable<Map.Entry<String, String>> mappings =
+        ImmutableMap.of("/assets", "/assets/").entrySet();
+    Iterable<Map.Entry<String, String>> overrides =
+        ImmutableMap.of("/assets/", directory.getPath()).entrySet();
+    Iterable<Map.Entry<String, String>> mimeTypes = ImmutableMap.<String, String>of().entrySet();
+    AssetServlet servlet = new AssetServlet(mappings, null, Charsets.UTF_8,
+        ConfiguredAssetsBundle.DEFAULT_CACHE_SPEC, overrides, mimeTypes);
+
+    switch (body) {
+      case OFF_HEAP:
+        servlet.setStorage(AssetStorage.OFF_HEAP, OFF_HEAP_BUDGET);
+        break;
+      case MAPPED:
+        servlet.setMapOverrides(true);
+        break;
+      case TRANSFERRED:
+        servlet.setTransferOverrides(true);
+        break;
+      case STREAMED:
+        servlet.setMaxCachedAssetSize(0, ImmutableMap.<String, Long>of());
+        break;
+      default:
+        break;
+    }
+    return servlet;
+  }
+}
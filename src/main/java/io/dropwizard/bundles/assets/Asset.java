@@ -0,0 +1,75 @@
+package io.dropwizard.bundles.assets;
+
+import java.util.Set;
+
+/**
+ * A loaded asset, as held in an {@link AssetCache}.
+ */
+interface Asset {
+  /**
+   * The current version of this asset.  The returned asset never changes, so a request should
+   * take one snapshot and use it throughout.
+   */
+  Asset snapshot();
+
+  AssetBody getResource();
+
+  String getETag();
+
+  long getLastModifiedTime();
+
+  /**
+   * This asset encoded with the given content-coding, such as {@code gzip}.  A variant has its own
+   * body and ETag.
+   *
+   * @return the variant, or null if the asset has no variant with that encoding
+   */
+  Asset getVariant(String encoding);
+
+  /**
+   * The content-codings this asset has variants for.
+   */
+  Set<String> getEncodings();
+
+  /**
+   * The number of bytes this asset and its variants hold in memory.
+   */
+  int weight();
+
+  /**
+   * The caching headers to send with this asset, decided once when it is loaded.
+   */
+  CacheControl getCacheControl();
+
+  void setCacheControl(CacheControl cacheControl);
+
+  /**
+   * The Content-Type to send with this asset, decided once when it is loaded.
+   *
+   * @return the content type, or null if the extension is unknown and the servlet container's own
+   *         mime mappings should be consulted
+   */
+  ContentType getContentType();
+
+  void setContentType(ContentType contentType);
+
+  /**
+   * The value of the Link header to send with this asset.
+   *
+   * @return the preload hints, or null to send none
+   */
+  String getPreloadLinks();
+
+  /**
+   * Extracts the preload hints to send with this asset from its body, and from the body of every
+   * later version of it.
+   *
+   * @param hints the hints to extract, or null to send none
+   */
+  void setPreloadHints(PreloadHints hints);
+
+  /**
+   * Called once the asset has left the cache; releases the cache's reference to its body.
+   */
+  void release();
+}
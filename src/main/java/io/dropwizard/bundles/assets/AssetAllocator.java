@@ -0,0 +1,84 @@
+package io.dropwizard.bundles.assets;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides where the bytes of a newly loaded asset are stored.  Direct buffers are handed out until
+ * the off-heap budget is used up, after which assets fall back to the heap.  Direct buffers are
+ * freed explicitly when their body is released for the last time rather than waiting for a full
+ * garbage collection to notice them.
+ */
+class AssetAllocator {
+  /**
+   * An allocator that keeps every asset on the heap.
+   */
+  static final AssetAllocator HEAP = new AssetAllocator(0);
+
+  private final long budget;
+  private final AtomicLong allocated = new AtomicLong();
+
+  AssetAllocator(long budget) {
+    this.budget = budget;
+  }
+
+  static AssetAllocator forStorage(AssetStorage storage, long offHeapBudget) {
+    return storage == AssetStorage.OFF_HEAP ? new AssetAllocator(offHeapBudget) : HEAP;
+  }
+
+  /**
+   * Stores the given bytes.  The returned body holds a single reference owned by the caller.
+   */
+  AssetBody allocate(byte[] bytes) {
+    if (!reserve(bytes.length)) {
+      return AssetBody.onHeap(bytes);
+    }
+
+    ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+    buffer.put(bytes);
+    buffer.flip();
+    return new DirectBody(buffer);
+  }
+
+  /**
+   * The number of bytes currently held in direct buffers.
+   */
+  long getAllocated() {
+    return allocated.get();
+  }
+
+  long getBudget() {
+    return budget;
+  }
+
+  private boolean reserve(int length) {
+    if (length == 0) {
+      return false;
+    }
+
+    while (true) {
+      long current = allocated.get();
+      if (current + length > budget) {
+        return false;
+      }
+      if (allocated.compareAndSet(current, current + length)) {
+        return true;
+      }
+    }
+  }
+
+  private final class DirectBody extends AssetBody.CountedBody {
+    private final ByteBuffer buffer;
+
+    private DirectBody(ByteBuffer buffer) {
+      super(buffer);
+      this.buffer = buffer;
+    }
+
+    @Override
+    void free() {
+      allocated.addAndGet(-buffer.capacity());
+      AssetBody.freeDirect(buffer);
+    }
+  }
+}
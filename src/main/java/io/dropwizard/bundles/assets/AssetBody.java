@@ -0,0 +1,418 @@
+package io.dropwizard.bundles.assets;
+
+import com.google.common.io.ByteSource;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The bytes of a cached asset.  Bodies that live outside of the heap are reference counted: the
+ * cache holds one reference and every request writing the body holds another, so the memory is
+ * only freed once the asset has been evicted and the last in-flight response has been written.
+ */
+abstract class AssetBody {
+  private static final Logger LOGGER = LoggerFactory.getLogger(AssetBody.class);
+  private static final int CHUNK_SIZE = 8192;
+
+  /**
+   * Wraps bytes that stay on the heap and are reclaimed by the garbage collector.
+   */
+  static AssetBody onHeap(byte[] bytes) {
+    return new HeapBody(bytes);
+  }
+
+  /**
+   * A body that is not held in memory at all: every write reads the requested bytes from the
+   * source again.
+   */
+  static AssetBody streamed(ByteSource source, int length) {
+    return new StreamedBody(source, length);
+  }
+
+  /**
+   * A body that holds nothing on the heap but the file's length.  Under Jetty the file is mapped
+   * on the first response that sends it, and regions of the mapping are handed to the connector,
+   * which writes them to the socket from the page cache without copying them in user space; the
+   * mapping is released with the last reference to the body.  This is not sendfile, which Jetty
+   * does not use.  Other containers, and multipart responses, are written with
+   * {@link FileChannel#transferTo} into the response's stream, which copies through a buffer.
+   */
+  static AssetBody file(File file, int length) {
+    return new FileBody(file, length);
+  }
+
+  /**
+   * Maps the current contents of a file into memory.  The bytes are served straight out of the
+   * page cache and never copied onto the heap; the mapping is released once the body is.
+   */
+  static AssetBody map(File file) throws IOException {
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+         FileChannel channel = raf.getChannel()) {
+      final ByteBuffer mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      return new CountedBody(mapping) {
+        @Override
+        void free() {
+          freeDirect(mapping);
+        }
+      };
+    }
+  }
+
+  /**
+   * The number of bytes in this body.
+   */
+  abstract int length();
+
+  /**
+   * The weight of this body in the cache, which is the memory it holds.
+   */
+  int weight() {
+    return length();
+  }
+
+  /**
+   * Whether this body is read from its source on every write rather than held in memory; if so
+   * {@link #buffer()} and {@link #slice(int, int)} are not supported.
+   */
+  boolean isStreamed() {
+    return false;
+  }
+
+  /**
+   * A new read-only buffer over the whole body, which callers may move the position and limit of
+   * freely.
+   */
+  abstract ByteBuffer buffer();
+
+  /**
+   * Acquires a reference to this body.
+   *
+   * @return false if the body has already been freed and must not be used
+   */
+  abstract boolean retain();
+
+  /**
+   * Releases a reference previously acquired with {@link #retain()}, or the reference the body was
+   * created with.
+   */
+  abstract void release();
+
+  /**
+   * A buffer over {@code length} bytes starting at {@code offset}, sharing this body's memory.
+   */
+  ByteBuffer slice(int offset, int length) {
+    ByteBuffer slice = buffer();
+    slice.limit(offset + length);
+    slice.position(offset);
+    return slice;
+  }
+
+  /**
+   * Writes {@code length} bytes starting at {@code offset} to the given stream.
+   */
+  void writeTo(OutputStream out, int offset, int length) throws IOException {
+    ByteBuffer src = slice(offset, length);
+
+    byte[] chunk = new byte[Math.min(length, CHUNK_SIZE)];
+    while (src.hasRemaining()) {
+      int count = Math.min(chunk.length, src.remaining());
+      src.get(chunk, 0, count);
+      out.write(chunk, 0, count);
+    }
+  }
+
+  /**
+   * Writes {@code length} bytes starting at {@code offset} as the whole of a response's body.
+   * Under Jetty, bodies held in memory are handed to the connector without being copied into its
+   * buffers.
+   */
+  void send(OutputStream out, int offset, int length) throws IOException {
+    if (!JettyContent.send(out, slice(offset, length))) {
+      writeTo(out, offset, length);
+    }
+  }
+
+  /**
+   * Frees a direct or mapped buffer without waiting for the garbage collector, using whichever JDK
+   * internal hook is available.  When none is, the buffer is simply left for the garbage collector.
+   * The buffer must not be touched afterwards.
+   */
+  static void freeDirect(ByteBuffer buffer) {
+    try {
+      if (DirectBuffers.INVOKE_CLEANER != null) {
+        DirectBuffers.INVOKE_CLEANER.invoke(DirectBuffers.UNSAFE, buffer);
+      } else {
+        Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+        cleanerMethod.setAccessible(true);
+        Object cleaner = cleanerMethod.invoke(buffer);
+        cleaner.getClass().getMethod("clean").invoke(cleaner);
+      }
+    } catch (Exception e) {
+      LOGGER.debug("Unable to free direct buffer, leaving it to the garbage collector", e);
+    }
+  }
+
+  /**
+   * Adds a reference to a count that has not yet dropped to zero.
+   *
+   * @return false if the count is already zero and the memory behind it freed
+   */
+  private static boolean acquire(AtomicInteger references) {
+    while (true) {
+      int current = references.get();
+      if (current == 0) {
+        return false;
+      }
+      if (references.compareAndSet(current, current + 1)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * A body over a buffer outside of the heap.  It starts out with a single reference and is freed
+   * when the last reference is released.
+   */
+  abstract static class CountedBody extends AssetBody {
+    private final ByteBuffer buffer;
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    CountedBody(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    /**
+     * Returns the memory behind this body; called exactly once.
+     */
+    abstract void free();
+
+    @Override
+    int length() {
+      return buffer.capacity();
+    }
+
+    @Override
+    ByteBuffer buffer() {
+      return buffer.asReadOnlyBuffer();
+    }
+
+    @Override
+    boolean retain() {
+      return acquire(references);
+    }
+
+    @Override
+    void release() {
+      if (references.decrementAndGet() == 0) {
+        free();
+      }
+    }
+  }
+
+  private static final class DirectBuffers {
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+      Object unsafe = null;
+      Method invokeCleaner = null;
+      try {
+        Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+        Field field = unsafeClass.getDeclaredField("theUnsafe");
+        field.setAccessible(true);
+        unsafe = field.get(null);
+        invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+      } catch (Exception expected) {
+        // Before Java 9 the buffer's own cleaner is used instead.
+        unsafe = null;
+        invokeCleaner = null;
+      }
+      UNSAFE = unsafe;
+      INVOKE_CLEANER = invokeCleaner;
+    }
+  }
+
+  private static final class StreamedBody extends AssetBody {
+    private final ByteSource source;
+    private final int length;
+
+    private StreamedBody(ByteSource source, int length) {
+      this.source = source;
+      this.length = length;
+    }
+
+    @Override
+    int length() {
+      return length;
+    }
+
+    @Override
+    int weight() {
+      return 0;
+    }
+
+    @Override
+    boolean isStreamed() {
+      return true;
+    }
+
+    @Override
+    ByteBuffer buffer() {
+      throw new UnsupportedOperationException("Streamed bodies are not held in memory");
+    }
+
+    @Override
+    boolean retain() {
+      return true;
+    }
+
+    @Override
+    void release() {
+    }
+
+    @Override
+    void writeTo(OutputStream out, int offset, int length) throws IOException {
+      source.slice(offset, length).copyTo(out);
+    }
+
+    @Override
+    void send(OutputStream out, int offset, int length) throws IOException {
+      writeTo(out, offset, length);
+    }
+  }
+
+  private static final class FileBody extends AssetBody {
+    private final File file;
+    private final int length;
+    private final AtomicInteger references = new AtomicInteger(1);
+    private AssetBody mapping;
+
+    private FileBody(File file, int length) {
+      this.file = file;
+      this.length = length;
+    }
+
+    @Override
+    int length() {
+      return length;
+    }
+
+    @Override
+    int weight() {
+      return 0;
+    }
+
+    @Override
+    boolean isStreamed() {
+      return true;
+    }
+
+    @Override
+    ByteBuffer buffer() {
+      throw new UnsupportedOperationException("File bodies are not held in memory");
+    }
+
+    @Override
+    boolean retain() {
+      return acquire(references);
+    }
+
+    @Override
+    void release() {
+      if (references.decrementAndGet() == 0) {
+        synchronized (this) {
+          if (mapping != null) {
+            mapping.release();
+            mapping = null;
+          }
+        }
+      }
+    }
+
+    @Override
+    void writeTo(OutputStream out, int offset, int length) throws IOException {
+      try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+        WritableByteChannel target = Channels.newChannel(out);
+        long position = offset;
+        long end = (long) offset + length;
+        while (position < end) {
+          long count = channel.transferTo(position, end - position, target);
+          if (count <= 0) {
+            throw new EOFException(file + " is shorter than " + end + " bytes");
+          }
+          position += count;
+        }
+      }
+    }
+
+    /**
+     * Under Jetty, hands a region of the file's mapping to the connector.  The caller holds a
+     * reference to this body, so the mapping outlives the blocking write, as for
+     * {@link CountedBody}.
+     */
+    @Override
+    void send(OutputStream out, int offset, int length) throws IOException {
+      if (length == 0 || !JettyContent.accepts(out)) {
+        writeTo(out, offset, length);
+        return;
+      }
+
+      AssetBody mapped = mapping();
+      if (mapped.length() < (long) offset + length) {
+        throw new EOFException(file + " is shorter than " + ((long) offset + length) + " bytes");
+      }
+      JettyContent.send(out, mapped.slice(offset, length));
+    }
+
+    private synchronized AssetBody mapping() throws IOException {
+      if (mapping == null) {
+        mapping = map(file);
+      }
+      return mapping;
+    }
+  }
+
+  private static final class HeapBody extends AssetBody {
+    private final byte[] bytes;
+
+    private HeapBody(byte[] bytes) {
+      this.bytes = bytes;
+    }
+
+    @Override
+    int length() {
+      return bytes.length;
+    }
+
+    @Override
+    ByteBuffer buffer() {
+      return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+    }
+
+    @Override
+    boolean retain() {
+      return true;
+    }
+
+    @Override
+    void release() {
+    }
+
+    @Override
+    void writeTo(OutputStream out, int offset, int length) throws IOException {
+      out.write(bytes, offset, length);
+    }
+  }
+}
@@ -0,0 +1,71 @@
+package io.dropwizard.bundles.assets;
+
+/**
+ * The cache of loaded assets behind an {@link AssetServlet}.  Implementations report every asset
+ * that leaves the cache to their {@link Listener} and, when the spec bounds the cache by weight,
+ * weigh assets by the number of bytes they hold in memory.
+ *
+ * @see AssetCacheEngine
+ */
+interface AssetCache {
+  /**
+   * Returns the asset for the given key, loading it if it is not cached.
+   *
+   * @return the asset, or null if there is no asset for the key
+   */
+  Asset get(String key);
+
+  /**
+   * Returns the asset for the given key if it is cached, without loading it.
+   */
+  Asset getIfPresent(String key);
+
+  /**
+   * Evicts the asset for the given key, if it is cached.
+   */
+  void invalidate(String key);
+
+  /**
+   * Evicts every cached asset.
+   */
+  void invalidateAll();
+
+  /**
+   * Weighs a cached asset again after the number of bytes it holds in memory changed, without
+   * reporting it to the listener.  Does nothing if the asset is no longer cached for the key.
+   */
+  void reweigh(String key, Asset asset);
+
+  /**
+   * The (approximate) number of cached assets.
+   */
+  long size();
+
+  /**
+   * A live view of the cached assets.
+   */
+  Iterable<Asset> assets();
+
+  /**
+   * Loads assets that are not in the cache.
+   */
+  interface Loader {
+    /**
+     * @return the asset, or null if there is no asset for the key
+     */
+    Asset load(String key) throws Exception;
+  }
+
+  /**
+   * Told about assets as they leave the cache.
+   */
+  interface Listener {
+    /**
+     * @param key     the key the asset was cached under
+     * @param asset   the asset that is no longer cached
+     * @param evicted whether the asset was evicted by the cache's size or expiry policy, rather
+     *                than being invalidated or replaced
+     */
+    void onRemoval(String key, Asset asset, boolean evicted);
+  }
+}
@@ -0,0 +1,82 @@
+package io.dropwizard.bundles.assets;
+
+import com.google.common.cache.CacheBuilderSpec;
+
+/**
+ * The cache implementation used to hold loaded assets.  Both engines are configured with the
+ * same {@code cacheSpec}.
+ */
+public enum AssetCacheEngine {
+  /**
+   * Guava's segmented LRU cache.
+   */
+  GUAVA {
+    @Override
+    AssetCache build(CacheBuilderSpec spec, AssetCache.Loader loader,
+                     AssetCache.Listener listener) {
+      return new GuavaAssetCache(spec, loader, listener);
+    }
+  },
+
+  /**
+   * Caffeine's frequency-aware cache.  Requires Java 8 and
+   * {@code com.github.ben-manes.caffeine:caffeine} on the classpath.
+   */
+  CAFFEINE {
+    @Override
+    AssetCache build(CacheBuilderSpec spec, AssetCache.Loader loader,
+                     AssetCache.Listener listener) {
+      checkCaffeineAvailable();
+      try {
+        return new CaffeineAssetCache(spec, loader, listener);
+      } catch (LinkageError e) {
+        throw new IllegalStateException("The CAFFEINE cache engine requires Java 8 and "
+            + "com.github.ben-manes.caffeine:caffeine on the classpath", e);
+      }
+    }
+  };
+
+  private static final String CAFFEINE_CLASS = "com.github.benmanes.caffeine.cache.Caffeine";
+
+  abstract AssetCache build(CacheBuilderSpec spec, AssetCache.Loader loader,
+                            AssetCache.Listener listener);
+
+  /**
+   * Fails at startup, rather than with a linkage error on some later request, when Caffeine cannot
+   * run: before Java 8, or without Caffeine on the classpath.
+   */
+  static void checkCaffeineAvailable() {
+    String version = System.getProperty("java.specification.version", "");
+    if (version.matches("1\\.[0-7]")) {
+      throw new IllegalStateException("The CAFFEINE cache engine requires Java 8, but this is Java "
+          + version + "; use the GUAVA cache engine instead");
+    }
+    try {
+      Class.forName(CAFFEINE_CLASS, false, AssetCacheEngine.class.getClassLoader());
+    } catch (ClassNotFoundException e) {
+      throw new IllegalStateException("The CAFFEINE cache engine requires "
+          + "com.github.ben-manes.caffeine:caffeine on the classpath", e);
+    }
+  }
+
+  /**
+   * Assets are only weighed when the spec bounds the cache by weight; a weigher combined with
+   * maximumSize would otherwise leave the cache unbounded.
+   */
+  static boolean isWeighted(CacheBuilderSpec spec) {
+    return spec.toParsableString().contains("maximumWeight");
+  }
+
+  /**
+   * The most assets, or the greatest total weight of assets when {@link #isWeighted weighted}, that
+   * the spec lets the cache hold, or {@link Long#MAX_VALUE} if it is not bounded.
+   */
+  static long capacity(CacheBuilderSpec spec) {
+    for (String option : spec.toParsableString().split(",")) {
+      if (option.startsWith("maximumSize=") || option.startsWith("maximumWeight=")) {
+        return Long.parseLong(option.substring(option.indexOf('=') + 1));
+      }
+    }
+    return Long.MAX_VALUE;
+  }
+}
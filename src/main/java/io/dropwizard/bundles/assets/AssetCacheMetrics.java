@@ -0,0 +1,44 @@
+package io.dropwizard.bundles.assets;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+/**
+ * The metrics an {@link AssetServlet} records about its asset cache and the range requests it
+ * serves.  Until they are registered
+ * with a {@link MetricRegistry} they are recorded but not reported anywhere.
+ */
+class AssetCacheMetrics {
+  final Meter hits;
+  final Meter misses;
+  final Timer loads;
+  final Counter evictions;
+  // Range requests whose ranges were merged, and those served in full for asking for too many
+  final Meter coalescedRanges;
+  final Meter rangesOverLimit;
+
+  AssetCacheMetrics() {
+    this(new Meter(), new Meter(), new Timer(), new Counter(), new Meter(), new Meter());
+  }
+
+  AssetCacheMetrics(MetricRegistry registry, String name) {
+    this(registry.meter(MetricRegistry.name(name, "hits")),
+        registry.meter(MetricRegistry.name(name, "misses")),
+        registry.timer(MetricRegistry.name(name, "loads")),
+        registry.counter(MetricRegistry.name(name, "evictions")),
+        registry.meter(MetricRegistry.name(name, "ranges-coalesced")),
+        registry.meter(MetricRegistry.name(name, "ranges-over-limit")));
+  }
+
+  private AssetCacheMetrics(Meter hits, Meter misses, Timer loads, Counter evictions,
+                            Meter coalescedRanges, Meter rangesOverLimit) {
+    this.hits = hits;
+    this.misses = misses;
+    this.loads = loads;
+    this.evictions = evictions;
+    this.coalescedRanges = coalescedRanges;
+    this.rangesOverLimit = rangesOverLimit;
+  }
+}
@@ -0,0 +1,123 @@
+package io.dropwizard.bundles.assets;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The hashes, sizes, modification times and compressed siblings of classpath assets, as written at
+ * build time by the {@code precompress} goal of the assets Maven plugin.  Assets found in the index
+ * are cached without hashing or compressing them at runtime.
+ */
+class AssetIndex {
+  private static final Logger LOGGER = LoggerFactory.getLogger(AssetIndex.class);
+
+  /**
+   * Where the plugin writes the index, relative to the root of the classpath.
+   */
+  static final String LOCATION = "META-INF/assets-index.json";
+
+  static final AssetIndex EMPTY = new AssetIndex(ImmutableMap.<String, Entry>of());
+
+  private final Map<String, Entry> assets;
+
+  private AssetIndex(Map<String, Entry> assets) {
+    this.assets = assets;
+  }
+
+  /**
+   * Loads and merges every index on the classpath.  Indexes that cannot be read are skipped, and
+   * their assets are hashed at runtime as usual.
+   */
+  static AssetIndex load(ClassLoader classLoader) {
+    ObjectMapper mapper = new ObjectMapper()
+        .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    Map<String, Entry> assets = Maps.newHashMap();
+    Enumeration<URL> indexes;
+    try {
+      indexes = classLoader.getResources(LOCATION);
+    } catch (IOException e) {
+      LOGGER.warn("Unable to find asset indexes", e);
+      return EMPTY;
+    }
+
+    for (URL url : Collections.list(indexes)) {
+      try (InputStream input = url.openStream()) {
+        IndexFile index = mapper.readValue(input, IndexFile.class);
+        assets.putAll(index.assets);
+      } catch (IOException e) {
+        LOGGER.warn("Unable to read asset index {}", url, e);
+      }
+    }
+    return new AssetIndex(ImmutableMap.copyOf(assets));
+  }
+
+  /**
+   * @param resourcePath the path of an asset on the classpath, without a leading slash
+   * @return the asset's entry, or null if it is not indexed
+   */
+  Entry get(String resourcePath) {
+    return assets.get(resourcePath);
+  }
+
+  int size() {
+    return assets.size();
+  }
+
+  private static class IndexFile {
+    @JsonProperty
+    private int version;
+
+    @JsonProperty
+    private Map<String, Entry> assets = Maps.newHashMap();
+  }
+
+  /**
+   * An indexed asset, or one of its compressed siblings.
+   */
+  static class Entry {
+    @JsonProperty
+    private String hash;
+
+    @JsonProperty
+    private long size;
+
+    @JsonProperty
+    private long lastModified;
+
+    @JsonProperty
+    private Map<String, Entry> encodings = Maps.newHashMap();
+
+    /**
+     * The murmur3 hash of the contents, as used in ETags.
+     */
+    String getHash() {
+      return hash;
+    }
+
+    long getSize() {
+      return size;
+    }
+
+    long getLastModified() {
+      return lastModified;
+    }
+
+    /**
+     * The asset's compressed siblings, by content-coding.
+     */
+    Map<String, Entry> getEncodings() {
+      return Collections.unmodifiableMap(encodings);
+    }
+  }
+}
@@ -0,0 +1,107 @@
+package io.dropwizard.bundles.assets;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.Sets;
+import java.io.File;
+import java.io.IOException;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Enumeration;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Lists the files found under a resource path on the classpath, both in directories and in jars.
+ */
+class AssetScanner {
+  // Beneath the classpath root, where the application's classes and metadata sit along with its
+  // assets, these are never listed
+  private static final String METADATA_DIRECTORY = "META-INF/";
+  private static final String CLASS_EXTENSION = ".class";
+
+  private AssetScanner() {
+  }
+
+  /**
+   * Finds every file beneath the given resource path.  When that is the classpath root, class
+   * files and the contents of {@code META-INF} are left out.
+   *
+   * @param resourcePath a classpath resource path such as {@code "assets/"}, without a leading
+   *                     slash and with a trailing slash (or empty for the classpath root)
+   * @return the paths of the files found, relative to {@code resourcePath}
+   */
+  static Set<String> list(String resourcePath) throws IOException {
+    ClassLoader classLoader = MoreObjects.firstNonNull(
+        Thread.currentThread().getContextClassLoader(), AssetScanner.class.getClassLoader());
+
+    boolean classpathRoot = resourcePath.isEmpty();
+    Set<String> paths = Sets.newTreeSet();
+    Enumeration<URL> roots = classLoader.getResources(resourcePath);
+    while (roots.hasMoreElements()) {
+      URL root = UrlUtil.switchFromZipToJarProtocolIfNeeded(roots.nextElement());
+      if ("file".equals(root.getProtocol())) {
+        try {
+          listDirectory(new File(root.toURI()), "", classpathRoot, paths);
+        } catch (URISyntaxException e) {
+          throw new IOException("Unable to list " + root, e);
+        }
+      } else if ("jar".equals(root.getProtocol())) {
+        listJar(root, classpathRoot, paths);
+      }
+    }
+    return paths;
+  }
+
+  private static void listDirectory(File directory, String prefix, boolean classpathRoot,
+                                    Set<String> paths) {
+    File[] children = directory.listFiles();
+    if (children == null) {
+      return;
+    }
+
+    for (File child : children) {
+      String path = prefix + child.getName();
+      if (child.isDirectory()) {
+        if (!classpathRoot || !(path + '/').equals(METADATA_DIRECTORY)) {
+          listDirectory(child, path + '/', classpathRoot, paths);
+        }
+      } else if (!classpathRoot || isAsset(path)) {
+        paths.add(path);
+      }
+    }
+  }
+
+  private static void listJar(URL root, boolean classpathRoot, Set<String> paths)
+      throws IOException {
+    URLConnection connection = root.openConnection();
+    if (!(connection instanceof JarURLConnection)) {
+      return;
+    }
+
+    JarURLConnection jarConnection = (JarURLConnection) connection;
+    // Avoid handing out (and then closing) the JarFile instance shared with the class loader.
+    jarConnection.setUseCaches(false);
+    String entryName = jarConnection.getEntryName();
+    String prefix = entryName == null ? "" : entryName;
+
+    try (JarFile jar = jarConnection.getJarFile()) {
+      Enumeration<JarEntry> entries = jar.entries();
+      while (entries.hasMoreElements()) {
+        JarEntry entry = entries.nextElement();
+        if (!entry.isDirectory() && entry.getName().startsWith(prefix)) {
+          String path = entry.getName().substring(prefix.length());
+          if (!classpathRoot || isAsset(path)) {
+            paths.add(path);
+          }
+        }
+      }
+    }
+  }
+
+  private static boolean isAsset(String path) {
+    return !path.startsWith(METADATA_DIRECTORY) && !path.endsWith(CLASS_EXTENSION);
+  }
+}
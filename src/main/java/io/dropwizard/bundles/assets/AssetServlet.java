@@ -1,29 +1,58 @@
 package io.dropwizard.bundles.assets;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.CharMatcher;
-import com.google.common.base.Joiner;
+import com.google.common.base.Charsets;
+import com.google.common.base.MoreObjects;
 import com.google.common.base.Splitter;
+import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheBuilderSpec;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
-import com.google.common.cache.Weigher;
+import com.google.common.cache.CacheStats;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Ordering;
+import com.google.common.collect.Sets;
+import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
 import com.google.common.io.Files;
 import com.google.common.io.Resources;
+import com.google.common.primitives.Ints;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.common.net.HttpHeaders;
 import com.google.common.net.MediaType;
 import io.dropwizard.servlets.assets.ByteRange;
 import io.dropwizard.servlets.assets.ResourceURL;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.zip.GZIPOutputStream;
 import javax.servlet.ServletException;
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServlet;
@@ -40,14 +69,36 @@ import org.eclipse.jetty.http.MimeTypes;
  */
 public class AssetServlet extends HttpServlet {
   private static final long serialVersionUID = 6393345594784987908L;
-  private static final MediaType DEFAULT_MEDIA_TYPE = MediaType.HTML_UTF_8;
   private static final CharMatcher SLASHES = CharMatcher.is('/');
+  private static final int DEFAULT_MAX_RESPONSE_BUFFER_SIZE = 256 * 1024;
+  private static final String GZIP = "gzip";
+  private static final String IDENTITY = "identity";
+  // Build-time compressed siblings, by file extension, that are served as variants of an asset
+  private static final Map<String, String> SIBLING_ENCODINGS =
+      ImmutableMap.of(".br", "br", ".gz", GZIP);
+  // Compressed variants that save less than this are not worth a second copy of the asset
+  private static final double MAX_GZIP_RATIO = 0.9;
+  private static final ObjectMapper MAPPER = new ObjectMapper();
 
   private final transient CacheBuilderSpec cacheSpec;
-  private final transient LoadingCache<String, Asset> cache;
+  private final transient AssetLoader loader;
+  private transient volatile AssetCache cache;
+  private transient volatile AssetCacheMetrics metrics = new AssetCacheMetrics();
   private final transient MimeTypes mimeTypes;
 
-  private Charset defaultCharset;
+  private transient CacheBuilderSpec missingAssetCacheSpec;
+  private transient Cache<String, Boolean> missingAssets;
+  private AssetStorage storage = AssetStorage.HEAP;
+  private AssetCacheEngine cacheEngine = AssetCacheEngine.GUAVA;
+  private int maxResponseBufferSize = DEFAULT_MAX_RESPONSE_BUFFER_SIZE;
+  private boolean fingerprint = false;
+  private String manifestPath = null;
+  private transient RangePolicy rangePolicy = RangePolicy.DEFAULT;
+  private long asyncWriteThreshold = Long.MAX_VALUE;
+  private long asyncWriteTimeout = 0;
+  private transient volatile Set<String> classpathKeys;
+  private transient volatile Manifest manifest;
+  private transient NotFoundPages notFoundPages = NotFoundPages.CONTAINER;
 
   /**
    * Creates a new {@code AssetServlet} that serves static assets loaded from {@code resourceURL}
@@ -75,12 +126,17 @@ public class AssetServlet extends HttpServlet {
                       CacheBuilderSpec spec,
                       Iterable<Map.Entry<String, String>> overrides,
                       Iterable<Map.Entry<String, String>> mimeTypes) {
-    this.defaultCharset = defaultCharset;
-    AssetLoader loader = new AssetLoader(resourcePathToUriPathMapping, indexFile, overrides);
-    this.cache = CacheBuilder.from(spec).weigher(new AssetSizeWeigher()).build(loader);
-    this.cacheSpec = spec;
     this.mimeTypes = new MimeTypes();
-    this.setMimeTypes(mimeTypes);
+    for (Map.Entry<String, String> mime : mimeTypes) {
+      this.mimeTypes.addMimeMapping(mime.getKey(), mime.getValue());
+    }
+    this.loader = new AssetLoader(resourcePathToUriPathMapping, indexFile, overrides,
+        this.mimeTypes);
+    this.loader.defaultCharset = defaultCharset;
+    this.cache = cacheEngine.build(spec, loader, new AssetRemovalListener());
+    this.loader.cache = this.cache;
+    this.cacheSpec = spec;
+    this.setMissingAssetCacheSpec(ConfiguredAssetsBundle.DEFAULT_MISSING_ASSET_CACHE_SPEC);
   }
 
   /**
@@ -92,6 +148,8 @@ public class AssetServlet extends HttpServlet {
     for (Map.Entry<String, String> mime : mimeTypes) {
       this.mimeTypes.addMimeMapping(mime.getKey(), mime.getValue());
     }
+    // Cached assets carry the Content-Type they were loaded with.
+    invalidateAll();
   }
 
   public MimeTypes getMimeTypes() {
@@ -99,153 +157,1129 @@ public class AssetServlet extends HttpServlet {
   }
 
   public void setDefaultCharset(Charset defaultCharset) {
-    this.defaultCharset = defaultCharset;
+    this.loader.defaultCharset = defaultCharset;
+    invalidateAll();
   }
 
   public Charset getDefaultCharset() {
-    return this.defaultCharset;
+    return loader.defaultCharset;
   }
 
   public CacheBuilderSpec getCacheSpec() {
     return cacheSpec;
   }
 
+  /**
+   * Replaces the cache of loaded assets with one built by the given engine.  Assets held by the
+   * previous cache are evicted.
+   *
+   * @param cacheEngine the cache implementation to use
+   */
+  public void setCacheEngine(AssetCacheEngine cacheEngine) {
+    AssetCache previous = this.cache;
+    this.cache = cacheEngine.build(cacheSpec, loader, new AssetRemovalListener());
+    this.loader.cache = this.cache;
+    this.cacheEngine = cacheEngine;
+    previous.invalidateAll();
+  }
+
+  public AssetCacheEngine getCacheEngine() {
+    return cacheEngine;
+  }
+
+  /**
+   * Selects where the bytes of cached assets are kept.  Changing the storage evicts every cached
+   * asset so that it is reloaded into the new storage on its next request.
+   *
+   * @param storage       where asset bytes are kept
+   * @param offHeapBudget the maximum number of bytes to keep off-heap when {@code storage} is
+   *                      {@link AssetStorage#OFF_HEAP}; assets that do not fit stay on the heap
+   */
+  public void setStorage(AssetStorage storage, long offHeapBudget) {
+    this.storage = storage;
+    this.loader.allocator = AssetAllocator.forStorage(storage, offHeapBudget);
+    invalidateAll();
+  }
+
+  public AssetStorage getStorage() {
+    return storage;
+  }
+
+  /**
+   * Serves files found in override directories from memory mappings instead of reading them onto
+   * the heap.  Mapped files are identified by size and modification time rather than by a hash of
+   * their contents, and are remapped when they change on disk.
+   *
+   * @param mapOverrides whether to memory-map override files
+   */
+  public void setMapOverrides(boolean mapOverrides) {
+    this.loader.mapOverrides = mapOverrides;
+    invalidateAll();
+  }
+
+  public boolean isMapOverrides() {
+    return loader.mapOverrides;
+  }
+
+  /**
+   * Sends files found in override directories from a mapping made when they are first sent,
+   * caching nothing on the heap but their metadata.  Like mapped files, they are identified by
+   * size and modification time.  Takes precedence over {@link #setMapOverrides(boolean)}.
+   *
+   * @param transferOverrides whether to send override files from disk rather than caching them
+   */
+  public void setTransferOverrides(boolean transferOverrides) {
+    this.loader.transferOverrides = transferOverrides;
+    invalidateAll();
+  }
+
+  public boolean isTransferOverrides() {
+    return loader.transferOverrides;
+  }
+
+  /**
+   * Limits the size of assets that are held in the cache.  Larger assets are streamed from the
+   * classpath or override directory on every request so that a single large file cannot evict
+   * many small ones; only their metadata is cached.
+   *
+   * @param maxCachedAssetSize       the size in bytes above which assets are streamed
+   * @param maxCachedAssetSizeByType limits for particular media types such as {@code video/mp4}
+   *                                 or {@code video/*}, taking precedence over
+   *                                 {@code maxCachedAssetSize}
+   */
+  public void setMaxCachedAssetSize(long maxCachedAssetSize,
+                                    Map<String, Long> maxCachedAssetSizeByType) {
+    this.loader.maxCachedAssetSize = maxCachedAssetSize;
+    this.loader.maxCachedAssetSizeByType = ImmutableMap.copyOf(maxCachedAssetSizeByType);
+    invalidateAll();
+  }
+
+  public long getMaxCachedAssetSize() {
+    return loader.maxCachedAssetSize;
+  }
+
+  /**
+   * Compresses assets with gzip once, as they are loaded into the cache, and serves the compressed
+   * variant to clients that accept it.  Assets that gzip does not make noticeably smaller, as well
+   * as streamed and memory-mapped assets, are only served as they are.
+   *
+   * @param gzip whether to cache gzip variants of assets
+   */
+  public void setGzip(boolean gzip) {
+    this.loader.gzip = gzip;
+    invalidateAll();
+  }
+
+  public boolean isGzip() {
+    return loader.gzip;
+  }
+
+  /**
+   * Sets the Cache-Control policies for assets.  The policies are compiled here, and the headers
+   * for an asset are worked out once when it is loaded; cached assets are evicted so that they pick
+   * up the new policies.
+   *
+   * @param policies the policies, tried in order
+   */
+  public void setCacheControlPolicies(List<CacheControlPolicy> policies) {
+    this.loader.cacheControl = CacheControlTable.compile(policies);
+    invalidateAll();
+  }
+
+  /**
+   * Limits how far the response buffer is grown to hold a whole asset.  Responses no larger than
+   * this are written to the client in a single write; larger ones are flushed whenever this many
+   * bytes have been buffered.  The container's default buffer size is used for smaller assets.
+   *
+   * @param maxResponseBufferSize the largest response buffer to use, in bytes
+   */
+  public void setMaxResponseBufferSize(int maxResponseBufferSize) {
+    this.maxResponseBufferSize = maxResponseBufferSize;
+  }
+
+  public int getMaxResponseBufferSize() {
+    return maxResponseBufferSize;
+  }
+
+  /**
+   * Writes responses of at least the given size asynchronously, so that a client that is slow to
+   * read a large asset does not hold a container thread for the whole download.  Streamed assets
+   * are always written synchronously, as reading them would block anyway.  The servlet must be
+   * registered as supporting asynchronous requests.
+   *
+   * @param asyncWriteThreshold the smallest response body to write asynchronously, in bytes, or
+   *                            {@link Long#MAX_VALUE} to write every response synchronously
+   * @param asyncWriteTimeout   how long an asynchronous response may take to write before the
+   *                            connection is closed, in milliseconds, or 0 for no limit
+   */
+  public void setAsyncWrites(long asyncWriteThreshold, long asyncWriteTimeout) {
+    this.asyncWriteThreshold = asyncWriteThreshold;
+    this.asyncWriteTimeout = asyncWriteTimeout;
+  }
+
+  public long getAsyncWriteThreshold() {
+    return asyncWriteThreshold;
+  }
+
+  public long getAsyncWriteTimeout() {
+    return asyncWriteTimeout;
+  }
+
+  /**
+   * Limits the ranges a single request can ask for.  Ranges that overlap or lie close together are
+   * merged, and requests for more ranges than that are answered with the whole asset.
+   *
+   * @param maxRanges   the most ranges to send in one response
+   * @param coalesceGap ranges separated by no more than this many bytes are merged
+   */
+  public void setRangePolicy(int maxRanges, int coalesceGap) {
+    this.rangePolicy = new RangePolicy(maxRanges, coalesceGap);
+  }
+
+  public int getMaxRanges() {
+    return rangePolicy.getMaxRanges();
+  }
+
+  public int getRangeCoalesceGap() {
+    return rangePolicy.getCoalesceGap();
+  }
+
+  /**
+   * Sends index documents with {@code Link: <...>; rel=preload} headers for the scripts,
+   * stylesheets and fonts they reference beneath the mappings, so that browsers fetch them without
+   * waiting to parse the document.  Documents are scanned once, when they are loaded.
+   *
+   * @param maxHintsByMapping the most hints to send with index documents beneath each URI path, by
+   *                          path; documents beneath other paths are sent without hints
+   */
+  public void setPreloadHints(Map<String, Integer> maxHintsByMapping) {
+    Map<String, Integer> limits = Maps.newTreeMap(Ordering.<String>natural().reverse());
+    for (Map.Entry<String, Integer> limit : maxHintsByMapping.entrySet()) {
+      String mapping = limit.getKey().endsWith("/") ? limit.getKey() : limit.getKey() + '/';
+      limits.put(mapping, limit.getValue());
+    }
+    // In reverse order, so a mapping comes before any mapping that is a prefix of it
+    this.loader.maxPreloadHints = ImmutableMap.copyOf(limits);
+    invalidateAll();
+  }
+
+  public Map<String, Integer> getPreloadHints() {
+    return loader.maxPreloadHints;
+  }
+
+  /**
+   * Serves assets at fingerprinted paths such as {@code /assets/app.3f9a1c0b7d2e.js} as well as
+   * at their own.  The fingerprint is taken from the content hash in the asset's ETag, so a
+   * fingerprinted path only ever serves one version of an asset and is cached for a year.
+   *
+   * @param fingerprint whether to serve fingerprinted paths
+   * @see AssetUrlResolver
+   */
+  public void setFingerprint(boolean fingerprint) {
+    this.fingerprint = fingerprint;
+    loader.generation.incrementAndGet();
+  }
+
+  public boolean isFingerprint() {
+    return fingerprint;
+  }
+
+  /**
+   * Serves a JSON manifest mapping the path of every asset beneath the resource path mappings to
+   * its fingerprinted path.  The servlet must also be mapped to the manifest's path.
+   *
+   * @param manifestPath the request path to serve the manifest at, or null to serve none
+   */
+  public void setManifestPath(String manifestPath) {
+    this.manifestPath = manifestPath;
+  }
+
+  public String getManifestPath() {
+    return manifestPath;
+  }
+
+  /**
+   * The number of bytes of cached assets currently held outside of the heap.
+   *
+   * @return The off-heap bytes in use.
+   */
+  public long getOffHeapBytesUsed() {
+    return loader.allocator.getAllocated();
+  }
+
+  /**
+   * Replaces the cache of known missing assets.  Requests for a path held in this cache are
+   * answered with a 404 without consulting the mappings, overrides or the classpath again.
+   *
+   * @param spec the CacheBuilderSpec to use for missing assets
+   */
+  public void setMissingAssetCacheSpec(CacheBuilderSpec spec) {
+    this.missingAssetCacheSpec = spec;
+    this.missingAssets = CacheBuilder.from(spec).recordStats().build();
+  }
+
+  public CacheBuilderSpec getMissingAssetCacheSpec() {
+    return missingAssetCacheSpec;
+  }
+
+  /**
+   * Statistics for the cache of known missing assets; a hit is a 404 served without a lookup.
+   *
+   * @return The missing asset cache statistics.
+   */
+  public CacheStats getMissingAssetCacheStats() {
+    return missingAssets.stats();
+  }
+
+  /**
+   * Answers requests that no asset answers with a fixed page, encoded once and written straight to
+   * the response, instead of going through the container's error handling, which renders a new
+   * error page for every miss.
+   *
+   * @param contentType   the Content-Type of the pages; text types are sent in UTF-8 unless they
+   *                      name a charset
+   * @param body          the page for misses beneath any mapping, or null to leave those to the
+   *                      container's error handling
+   * @param bodyByMapping pages for misses beneath particular URI paths, by path
+   */
+  public void setNotFoundPages(String contentType, String body, Map<String, String> bodyByMapping) {
+    this.notFoundPages = NotFoundPages.of(contentType, body, bodyByMapping);
+  }
+
+  /**
+   * Registers metrics about the asset cache: hit and miss meters, a timer for loads, a counter of
+   * evictions, and gauges for the number of cached assets, the bytes they hold in memory and the
+   * number of requests answered from the cache of missing assets.  Gauges already registered
+   * under the same names, such as those of a servlet this one replaces, are replaced.
+   *
+   * @param registry the registry to register the metrics with
+   * @param name     the prefix for the metric names
+   */
+  public void registerMetrics(MetricRegistry registry, String name) {
+    this.metrics = new AssetCacheMetrics(registry, name);
+    registerGauge(registry, MetricRegistry.name(name, "entries"), new Gauge<Long>() {
+      @Override
+      public Long getValue() {
+        return cache.size();
+      }
+    });
+    registerGauge(registry, MetricRegistry.name(name, "weight"), new Gauge<Long>() {
+      @Override
+      public Long getValue() {
+        long weight = 0;
+        for (Asset asset : cache.assets()) {
+          weight += asset.weight();
+        }
+        return weight;
+      }
+    });
+    registerGauge(registry, MetricRegistry.name(name, "missing-hits"), new Gauge<Long>() {
+      @Override
+      public Long getValue() {
+        return missingAssets.stats().hitCount();
+      }
+    });
+  }
+
+  private static void registerGauge(MetricRegistry registry, String name, Gauge<Long> gauge) {
+    registry.remove(name);
+    registry.register(name, gauge);
+  }
+
+  /**
+   * Loads the assets found beneath the resource path mappings into the cache, using the given
+   * executor to load them concurrently.  Loading stops once the cache is full, as given by the
+   * {@code maximumSize} or {@code maximumWeight} of its spec, rather than going on to evict the
+   * assets it just loaded; the loads already under way may still overfill it slightly.
+   *
+   * @param executor the executor to load assets on
+   * @return the number of assets loaded
+   * @throws IOException          if the classpath could not be listed
+   * @throws InterruptedException if interrupted while waiting for the assets to load
+   */
+  public int warmUp(ExecutorService executor) throws IOException, InterruptedException {
+    final long capacity = AssetCacheEngine.capacity(cacheSpec);
+    final boolean weighted = AssetCacheEngine.isWeighted(cacheSpec);
+    final AtomicLong filled = new AtomicLong();
+    List<Callable<Boolean>> loads = Lists.newArrayList();
+    for (final String key : loader.listAssetKeys()) {
+      loads.add(new Callable<Boolean>() {
+        @Override
+        public Boolean call() {
+          if (filled.get() >= capacity) {
+            return false;
+          }
+          Asset asset = lookupAsset(key);
+          if (asset == null) {
+            return false;
+          }
+          filled.addAndGet(weighted ? asset.weight() : 1);
+          return true;
+        }
+      });
+    }
+
+    int loaded = 0;
+    for (Future<Boolean> load : executor.invokeAll(loads)) {
+      try {
+        if (load.get()) {
+          loaded++;
+        }
+      } catch (ExecutionException ignored) {
+        // The asset will be loaded (or fail to) again when it is requested.
+      }
+    }
+    return loaded;
+  }
+
+  /**
+   * The fingerprinted path of the asset at the given path, or the path itself if fingerprinting
+   * is off or there is no asset at the path.
+   */
+  String fingerprintedPath(String path) {
+    if (!fingerprint || missingAssets.getIfPresent(path) != null) {
+      return path;
+    }
+
+    Asset asset = lookupAsset(path);
+    return asset == null ? path : Fingerprints.apply(path, Fingerprints.of(asset.getETag()));
+  }
+
+  /**
+   * The fingerprinted path of every asset beneath the resource path mappings and in the override
+   * directories, by its path.  Compressed siblings are variants of the asset they sit next to
+   * rather than assets of their own, so they are left out.
+   *
+   * <p>The manifest is built without adding assets to the cache, and is kept until an asset is
+   * reloaded or evicted other than to make room, or, when the override directories are not
+   * watched, until a file in them changes.  Watched override directories are only listed to
+   * rebuild the manifest, and the ETag of each asset is kept until that asset changes, so a
+   * rebuild only hashes the assets that changed.</p>
+   */
+  Map<String, String> fingerprintManifest() throws IOException {
+    long generation = loader.generation.get();
+    boolean watched = loader.overridesWatched;
+    Manifest current = manifest;
+    if (watched && current != null && current.generation == generation) {
+      return current.paths;
+    }
+
+    Map<String, File> overrideFiles = loader.listOverrideFiles();
+    long overrideStamp = watched ? 0 : stamp(overrideFiles);
+    if (current != null && current.generation == generation
+        && current.overrideStamp == overrideStamp) {
+      return current.paths;
+    }
+
+    Set<String> keys = classpathKeys;
+    if (keys == null) {
+      // The classpath does not change while the servlet runs.
+      keys = loader.listAssetKeys();
+      classpathKeys = keys;
+    }
+    keys = Sets.union(keys, overrideFiles.keySet());
+
+    Map<String, String> paths = Maps.newTreeMap();
+    for (String key : keys) {
+      if (key.endsWith("/") || isSibling(key, keys) || missingAssets.getIfPresent(key) != null) {
+        continue;
+      }
+      if (!fingerprint) {
+        paths.put(key, key);
+        continue;
+      }
+      // Unwatched override files change without telling the loader, so their ETags aren't kept.
+      String etag = watched || !overrideFiles.containsKey(key)
+          ? noteETag(key) : currentETag(key);
+      if (etag != null) {
+        paths.put(key, Fingerprints.apply(key, Fingerprints.of(etag)));
+      }
+    }
+
+    paths = ImmutableMap.copyOf(paths);
+    manifest = new Manifest(generation, overrideStamp, paths);
+    return paths;
+  }
+
+  private static boolean isSibling(String key, Set<String> keys) {
+    for (String extension : SIBLING_ENCODINGS.keySet()) {
+      if (key.endsWith(extension)
+          && keys.contains(key.substring(0, key.length() - extension.length()))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * A value that changes whenever an override file is created, deleted or modified.
+   */
+  private static long stamp(Map<String, File> files) {
+    Hasher hasher = Hashing.murmur3_128().newHasher();
+    for (Map.Entry<String, File> file : files.entrySet()) {
+      hasher.putUnencodedChars(file.getKey())
+          .putLong(file.getValue().length())
+          .putLong(file.getValue().lastModified());
+    }
+    return hasher.hash().asLong();
+  }
+
+  /**
+   * The ETag of the asset for a key, as noted when the manifest was last built if the asset has
+   * not changed since, otherwise as it is now.
+   */
+  private String noteETag(String key) throws IOException {
+    String etag = loader.etags.get(key);
+    if (etag != null) {
+      return etag;
+    }
+
+    long generation = loader.generation.get();
+    etag = currentETag(key);
+    if (etag != null) {
+      loader.etags.put(key, etag);
+      if (loader.generation.get() != generation) {
+        // Something changed while the ETag was worked out, possibly this asset.
+        loader.etags.remove(key, etag);
+      }
+    }
+    return etag;
+  }
+
+  /**
+   * The ETag of the asset for a key, without adding the asset to the cache: the cached asset's, or
+   * a description's, or failing those that of the asset loaded and released again.
+   *
+   * @return the ETag, or null if there is no asset for the key
+   */
+  private String currentETag(String key) throws IOException {
+    Asset asset = cache.getIfPresent(key);
+    if (asset == null) {
+      asset = loader.describe(key);
+    }
+    if (asset != null) {
+      return asset.getETag();
+    }
+
+    try {
+      asset = loader.load(key);
+    } catch (IOException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new IOException("Unable to load " + key, e);
+    }
+    if (asset == null) {
+      return null;
+    }
+    try {
+      return asset.getETag();
+    } finally {
+      asset.release();
+    }
+  }
+
+  Iterable<Map.Entry<String, String>> getOverrides() {
+    return loader.overrides;
+  }
+
+  /**
+   * Whether an {@link OverrideWatcher} is reporting changes to the override directories, in which
+   * case requests stop checking override files for changes themselves.
+   */
+  void setOverridesWatched(boolean overridesWatched) {
+    loader.overridesWatched = overridesWatched;
+  }
+
+  /**
+   * Refreshes or evicts the cached asset for an override file that was created, modified or
+   * deleted, along with the directory keys it is served for if it is an index file.
+   *
+   * @param key      the key the override file is served for
+   * @param modified whether the file was modified in place; created and deleted files change which
+   *                 file (if any) is served for the key, so their assets are evicted instead
+   */
+  void overrideChanged(String key, boolean modified) {
+    List<String> keys = Lists.newArrayList(key);
+    for (String extension : SIBLING_ENCODINGS.keySet()) {
+      if (key.endsWith(extension)) {
+        // A compressed sibling is a variant of the asset it sits next to.
+        overrideChanged(key.substring(0, key.length() - extension.length()), false);
+      }
+    }
+
+    String indexFilename = loader.indexFilename;
+    if (indexFilename != null && key.endsWith('/' + indexFilename)) {
+      String directory = key.substring(0, key.length() - indexFilename.length());
+      keys.add(directory);
+      keys.add(directory.substring(0, directory.length() - 1));
+    }
+
+    for (String changed : keys) {
+      loader.changed(changed);
+      missingAssets.invalidate(changed);
+      Asset asset = cache.getIfPresent(changed);
+      if (modified && asset instanceof FileSystemAsset) {
+        ((FileSystemAsset) asset).refreshIfModified();
+      } else if (asset != null) {
+        cache.invalidate(changed);
+      }
+    }
+  }
+
+  /**
+   * Evicts every cached asset when it is not known which override files changed.
+   */
+  void overridesChanged() {
+    missingAssets.invalidateAll();
+    invalidateAll();
+  }
+
+  /**
+   * Evicts every cached asset, and forgets every ETag noted for the manifest, after a change that
+   * may affect every asset.
+   */
+  private void invalidateAll() {
+    loader.changedAll();
+    cache.invalidateAll();
+  }
+
+  /**
+   * A manifest, along with the state of the assets it was built from.
+   */
+  private static final class Manifest {
+    private final long generation;
+    private final long overrideStamp;
+    private final Map<String, String> paths;
+
+    private Manifest(long generation, long overrideStamp, Map<String, String> paths) {
+      this.generation = generation;
+      this.overrideStamp = overrideStamp;
+      this.paths = paths;
+    }
+  }
+
+  @Override
+  public void destroy() {
+    loader.refresher.shutdown();
+    super.destroy();
+  }
+
   @Override
   protected void doGet(HttpServletRequest req, HttpServletResponse resp)
           throws ServletException, IOException {
-    try {
-      final StringBuilder builder = new StringBuilder(req.getServletPath());
-      if (req.getPathInfo() != null) {
-        builder.append(req.getPathInfo());
+    serve(req, resp, false);
+  }
+
+  /**
+   * Answers HEAD requests from the asset's metadata alone.  The body is never written, and an
+   * asset that is not cached is described rather than loaded wherever that gives the same headers
+   * a GET would.
+   */
+  @Override
+  protected void doHead(HttpServletRequest req, HttpServletResponse resp)
+          throws ServletException, IOException {
+    serve(req, resp, true);
+  }
+
+  /**
+   * Serves the asset for a request.  Requests that no asset answers get a 404; failures to load
+   * an asset are left to propagate to the container rather than being passed off as misses.
+   */
+  private void serve(HttpServletRequest req, HttpServletResponse resp, boolean head)
+          throws IOException {
+    final StringBuilder builder = new StringBuilder(req.getServletPath());
+    if (req.getPathInfo() != null) {
+      builder.append(req.getPathInfo());
+    }
+    String key = builder.toString();
+    if (key.equals(manifestPath)) {
+      serveManifest(resp, head);
+      return;
+    }
+
+    String requestedFingerprint = null;
+    if (fingerprint) {
+      Matcher fingerprinted = Fingerprints.match(key);
+      if (fingerprinted != null && isCurrentFingerprint(fingerprinted)) {
+        key = Fingerprints.strip(fingerprinted);
+        requestedFingerprint = fingerprinted.group(2);
       }
-      final Asset cachedAsset = cache.getUnchecked(builder.toString());
+    }
+
+    if (missingAssets.getIfPresent(key) != null) {
+      notFoundPages.send(resp, key, head);
+      return;
+    }
+
+    Asset cachedAsset = head ? describeAsset(key) : getAsset(key);
+    if (cachedAsset == null) {
+      notFoundPages.send(resp, key, head);
+      return;
+    }
+
+    // Serve a single, consistent version of the asset even if it is refreshed meanwhile.
+    Asset snapshot = cachedAsset.snapshot();
+    String encoding = selectEncoding(req, snapshot);
+    Asset variant = encoding == null ? snapshot : snapshot.getVariant(encoding);
+    AssetBody body = variant.getResource();
+    // A HEAD request only needs the body's length, which outlives its memory.
+    while (!head && !body.retain()) {
+      // The asset was evicted and its memory freed after it was looked up; load it again.
+      cachedAsset = getAsset(key);
       if (cachedAsset == null) {
-        resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+        notFoundPages.send(resp, key, head);
         return;
       }
+      snapshot = cachedAsset.snapshot();
+      encoding = selectEncoding(req, snapshot);
+      variant = encoding == null ? snapshot : snapshot.getVariant(encoding);
+      body = variant.getResource();
+    }
 
-      if (isCachedClientSide(req, cachedAsset)) {
-        resp.sendError(HttpServletResponse.SC_NOT_MODIFIED);
-        return;
+    if (!snapshot.getEncodings().isEmpty()) {
+      resp.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+    }
+    if (encoding != null) {
+      resp.setHeader(HttpHeaders.CONTENT_ENCODING, encoding);
+    }
+
+    // The asset may have changed since its fingerprint was checked.
+    CacheControl cacheControl = requestedFingerprint != null
+        && requestedFingerprint.equals(Fingerprints.of(snapshot.getETag()))
+        ? CacheControl.FINGERPRINTED : cachedAsset.getCacheControl();
+    if (cacheControl.getHeader() != null) {
+      resp.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl.getHeader());
+    }
+    if (cacheControl.getExpiresAfterMillis() >= 0) {
+      resp.setDateHeader(HttpHeaders.EXPIRES,
+          System.currentTimeMillis() + cacheControl.getExpiresAfterMillis());
+    }
+    if (cachedAsset.getPreloadLinks() != null) {
+      resp.setHeader(HttpHeaders.LINK, cachedAsset.getPreloadLinks());
+    }
+
+    boolean writingAsync = false;
+    try {
+      writingAsync = serveAsset(req, resp, variant, contentType(req, cachedAsset), body, head);
+    } finally {
+      if (!head && !writingAsync) {
+        body.release();
       }
+    }
+  }
 
-      final String rangeHeader = req.getHeader(HttpHeaders.RANGE);
+  /**
+   * The Content-Type of an asset.  Extensions that the servlet's own mime types do not know are
+   * looked up in the servlet container's on every request.
+   */
+  private ContentType contentType(HttpServletRequest req, Asset asset) {
+    ContentType contentType = asset.getContentType();
+    if (contentType == null) {
+      contentType = ContentType.of(req.getServletContext().getMimeType(req.getRequestURI()),
+          loader.defaultCharset);
+    }
+    return contentType;
+  }
 
-      final int resourceLength = cachedAsset.getResource().length;
-      ImmutableList<ByteRange> ranges = ImmutableList.of();
+  /**
+   * Whether a path that looks fingerprinted is for an asset with that fingerprint.  Paths with an
+   * out of date fingerprint are served like any other path, which usually means a 404.
+   */
+  private boolean isCurrentFingerprint(Matcher fingerprinted) {
+    String key = Fingerprints.strip(fingerprinted);
+    if (missingAssets.getIfPresent(key) != null) {
+      return false;
+    }
 
-      boolean usingRanges = false;
-      // Support for HTTP Byte Ranges
-      // http://www.w3.org/Protocols/rfc2616/rfc2616-sec14.html
-      if (rangeHeader != null) {
+    Asset asset = lookupAsset(key);
+    return asset != null && fingerprinted.group(2).equals(Fingerprints.of(asset.getETag()));
+  }
 
-        final String ifRange = req.getHeader(HttpHeaders.IF_RANGE);
+  /**
+   * The asset for a HEAD request: the cached asset, or a description of it that does not need its
+   * contents to be read, or failing that the asset loaded into the cache as for a GET.
+   */
+  private Asset describeAsset(String key) {
+    if (cache.getIfPresent(key) == null) {
+      Asset described;
+      try {
+        described = loader.describe(key);
+      } catch (IOException e) {
+        described = null;
+      }
+      if (described != null) {
+        metrics.misses.mark();
+        return described;
+      }
+    }
+    return getAsset(key);
+  }
 
-        if (ifRange == null || cachedAsset.getETag().equals(ifRange)) {
+  private void serveManifest(HttpServletResponse resp, boolean head) throws IOException {
+    byte[] manifest = MAPPER.writeValueAsBytes(fingerprintManifest());
+    resp.setContentType(MediaType.JSON_UTF_8.withoutParameters().toString());
+    resp.setCharacterEncoding(Charsets.UTF_8.name());
+    // The manifest changes whenever an asset does.
+    resp.setHeader(HttpHeaders.CACHE_CONTROL, "no-cache");
+    resp.setContentLength(manifest.length);
+    if (head) {
+      return;
+    }
+    try (ServletOutputStream output = resp.getOutputStream()) {
+      output.write(manifest);
+    }
+  }
+
+  private Asset getAsset(String key) {
+    Asset asset = cache.getIfPresent(key);
+    if (asset != null) {
+      metrics.hits.mark();
+      return asset;
+    }
+
+    metrics.misses.mark();
+    return loadIntoCache(key);
+  }
+
+  /**
+   * The asset for a key, for the servlet's own use rather than to answer a request for it, so
+   * that it counts as neither a hit nor a miss.
+   */
+  private Asset lookupAsset(String key) {
+    Asset asset = cache.getIfPresent(key);
+    return asset != null ? asset : loadIntoCache(key);
+  }
+
+  private Asset loadIntoCache(String key) {
+    Asset asset;
+    final Timer.Context context = metrics.loads.time();
+    try {
+      asset = cache.get(key);
+    } finally {
+      context.stop();
+    }
 
+    if (asset == null) {
+      // The loader found nothing for this key; remember that so the next request is cheap.
+      missingAssets.put(key, Boolean.TRUE);
+    }
+    return asset;
+  }
+
+  /**
+   * Picks the content-coding to serve an asset with from the request's Accept-Encoding header: the
+   * variant the client prefers most, the smallest one if it likes several equally, or the asset
+   * itself if the client prefers it to every variant or sent no Accept-Encoding at all.
+   *
+   * @return the content-coding of the variant to serve, or null to serve the asset itself
+   */
+  private static String selectEncoding(HttpServletRequest req, Asset asset) {
+    String acceptEncoding = req.getHeader(HttpHeaders.ACCEPT_ENCODING);
+    if (acceptEncoding == null || asset.getEncodings().isEmpty()) {
+      return null;
+    }
+
+    Map<String, Double> qualities = parseQualities(acceptEncoding);
+    Double wildcard = qualities.get("*");
+    Double identity = qualities.get(IDENTITY);
+    String selected = null;
+    double selectedQuality = identity != null ? identity : 1.0;
+    int selectedLength = asset.getResource().length();
+    for (String encoding : asset.getEncodings()) {
+      Double quality = qualities.get(encoding);
+      if (quality == null) {
+        quality = wildcard != null ? wildcard : 0.0;
+      }
+
+      int length = asset.getVariant(encoding).getResource().length();
+      if (quality > 0 && (quality > selectedQuality
+          || (quality == selectedQuality && length < selectedLength))) {
+        selected = encoding;
+        selectedQuality = quality;
+        selectedLength = length;
+      }
+    }
+    return selected;
+  }
+
+  /**
+   * Parses the content-codings and their qualities out of an Accept-Encoding header.  Codings with
+   * an unreadable quality are treated as unacceptable.
+   */
+  private static Map<String, Double> parseQualities(String acceptEncoding) {
+    Map<String, Double> qualities = Maps.newHashMap();
+    for (String coding : Splitter.on(',').trimResults().omitEmptyStrings().split(acceptEncoding)) {
+      List<String> parameters = Splitter.on(';').trimResults().splitToList(coding);
+      double quality = 1.0;
+      for (String parameter : parameters.subList(1, parameters.size())) {
+        if (parameter.startsWith("q=") || parameter.startsWith("Q=")) {
           try {
-            ranges = parseRangeHeader(rangeHeader, resourceLength);
+            quality = Double.parseDouble(parameter.substring(2).trim());
           } catch (NumberFormatException e) {
-            resp.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
-            return;
+            quality = 0.0;
           }
+        }
+      }
+      qualities.put(parameters.get(0).toLowerCase(Locale.ENGLISH), quality);
+    }
+    return qualities;
+  }
 
-          if (ranges.isEmpty()) {
-            resp.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
-            return;
-          }
+  /**
+   * Sends the asset's headers and, unless this is a HEAD request, its body.
+   *
+   * @return whether the body is being written asynchronously, in which case the writer releases it
+   */
+  private boolean serveAsset(HttpServletRequest req, HttpServletResponse resp, Asset cachedAsset,
+                             ContentType contentType, AssetBody body, boolean head)
+      throws IOException {
+    switch (ConditionalRequests.evaluate(req, cachedAsset.getETag(),
+        cachedAsset.getLastModifiedTime())) {
+      case NOT_MODIFIED:
+        // Set directly: sendError would hand the response to the container's error handling. The
+        // caching headers are already set; the validators go with them.
+        resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        resp.setDateHeader(HttpHeaders.LAST_MODIFIED, cachedAsset.getLastModifiedTime());
+        resp.setHeader(HttpHeaders.ETAG, cachedAsset.getETag());
+        return false;
+      case PRECONDITION_FAILED:
+        resp.setStatus(HttpServletResponse.SC_PRECONDITION_FAILED);
+        resp.setContentLength(0);
+        return false;
+      default:
+        break;
+    }
+
+    final String rangeHeader = req.getHeader(HttpHeaders.RANGE);
+
+    final int resourceLength = body.length();
+    List<ByteRange> ranges = ImmutableList.of();
+
+    boolean usingRanges = false;
+    // Support for HTTP Byte Ranges
+    // http://www.w3.org/Protocols/rfc2616/rfc2616-sec14.html
+    // Range headers only apply to GET requests.
+    if (rangeHeader != null && !head) {
+
+      if (ConditionalRequests.isRangeCurrent(req, cachedAsset.getETag(),
+          cachedAsset.getLastModifiedTime())) {
+
+        try {
+          ranges = parseRangeHeader(rangeHeader, resourceLength);
+        } catch (NumberFormatException e) {
+          ranges = ImmutableList.of();
+        }
+
+        if (ranges.isEmpty()) {
+          resp.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+          resp.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + resourceLength);
+          resp.setContentLength(0);
+          return false;
+        }
 
+        final List<ByteRange> coalesced = rangePolicy.coalesce(ranges);
+        if (coalesced != ranges) {
+          metrics.coalescedRanges.mark();
+          ranges = coalesced;
+        }
+
+        if (rangePolicy.isOverLimit(ranges)) {
+          // Too many ranges to be worth sending separately: send the whole asset instead.
+          metrics.rangesOverLimit.mark();
+          ranges = ImmutableList.of();
+        } else {
           resp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
           usingRanges = true;
 
-          resp.addHeader(HttpHeaders.CONTENT_RANGE, "bytes "
-                  + Joiner.on(",").join(ranges) + "/" + resourceLength);
+          if (ranges.size() == 1) {
+            resp.addHeader(HttpHeaders.CONTENT_RANGE, "bytes " + ranges.get(0) + "/"
+                    + resourceLength);
+          }
         }
       }
+    }
 
-      resp.setDateHeader(HttpHeaders.LAST_MODIFIED, cachedAsset.getLastModifiedTime());
-      resp.setHeader(HttpHeaders.ETAG, cachedAsset.getETag());
+    resp.setDateHeader(HttpHeaders.LAST_MODIFIED, cachedAsset.getLastModifiedTime());
+    resp.setHeader(HttpHeaders.ETAG, cachedAsset.getETag());
 
+    if (contentType.isRanged() || usingRanges) {
+      resp.addHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+    }
 
-      String mimeTypeOfExtension = mimeTypes.getMimeByExtension(req.getRequestURI());
-      if (mimeTypeOfExtension == null) {
-        mimeTypeOfExtension = req.getServletContext().getMimeType(req.getRequestURI());
+    // The length of the body being served, which for a variant is not the asset's length
+    long contentLength = resourceLength;
+    MultipartByteRanges multipart = null;
+    if (ranges.size() > 1) {
+      // Each range goes in its own part, labelled with the asset's media type.
+      multipart = new MultipartByteRanges(ranges, resourceLength, contentType.getHeader());
+      resp.setContentType(multipart.getContentType());
+      contentLength = multipart.getContentLength();
+    } else {
+      resp.setContentType(contentType.getMimeType());
+      if (contentType.getCharset() != null) {
+        resp.setCharacterEncoding(contentType.getCharset());
       }
+      if (usingRanges) {
+        contentLength = ranges.get(0).getEnd() - ranges.get(0).getStart() + 1;
+      }
+    }
+    resp.setContentLengthLong(contentLength);
+    if (head) {
+      return false;
+    }
 
-      MediaType mediaType = DEFAULT_MEDIA_TYPE;
+    // Let the whole body be committed in one write rather than in buffer-sized pieces.
+    if (contentLength > resp.getBufferSize() && maxResponseBufferSize > resp.getBufferSize()) {
+      resp.setBufferSize((int) Math.min(contentLength, maxResponseBufferSize));
+    }
 
-      if (mimeTypeOfExtension != null) {
-        try {
-          mediaType = MediaType.parse(mimeTypeOfExtension);
-          if (defaultCharset != null && mediaType.is(MediaType.ANY_TEXT_TYPE)) {
-            mediaType = mediaType.withCharset(defaultCharset);
+    if (contentLength >= asyncWriteThreshold && !body.isStreamed() && req.isAsyncSupported()) {
+      List<ByteBuffer> buffers;
+      if (multipart != null) {
+        buffers = multipart.buffers(body);
+      } else if (usingRanges) {
+        final ByteRange range = ranges.get(0);
+        buffers = ImmutableList.of(
+            body.slice(range.getStart(), range.getEnd() - range.getStart() + 1));
+      } else {
+        buffers = ImmutableList.of(body.buffer());
+      }
+      AsyncAssetWriter.start(req, resp.getOutputStream(), buffers, body, asyncWriteTimeout);
+      return true;
+    }
+
+    try (ServletOutputStream output = resp.getOutputStream()) {
+      if (multipart != null) {
+        multipart.writeTo(output, body);
+      } else if (usingRanges) {
+        final ByteRange range = ranges.get(0);
+        body.send(output, range.getStart(), range.getEnd() - range.getStart() + 1);
+      } else {
+        body.send(output, 0, resourceLength);
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Parses a given Range header for one or more byte ranges.  As RFC 7233 asks, ranges that end
+   * past the end of the resource are cut short, suffix ranges longer than the resource cover all of
+   * it, and ranges that start past its end or end before they start are left out.
+   *
+   * @param rangeHeader    Range header to parse
+   * @param resourceLength Length of the resource in bytes
+   * @return List of satisfiable ranges, which is empty if none are
+   * @throws NumberFormatException if a range is malformed
+   */
+  private static ImmutableList<ByteRange> parseRangeHeader(final String rangeHeader,
+                                                           final int resourceLength) {
+    final ImmutableList.Builder<ByteRange> builder = ImmutableList.builder();
+    if (rangeHeader.contains("=")) {
+      final String[] parts = rangeHeader.split("=");
+      if (parts.length > 1) {
+        final List<String> ranges = Splitter.on(",").trimResults().splitToList(parts[1]);
+        for (final String range : ranges) {
+          final ByteRange parsed = parseRange(range, resourceLength);
+          if (parsed != null) {
+            builder.add(parsed);
           }
-        } catch (IllegalArgumentException expected) {
         }
       }
+    }
+    return builder.build();
+  }
 
-      if (mediaType.is(MediaType.ANY_VIDEO_TYPE)
-              || mediaType.is(MediaType.ANY_AUDIO_TYPE) || usingRanges) {
-        resp.addHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
-      }
+  /**
+   * Parses one byte-range-spec or suffix-byte-range-spec.
+   *
+   * @return the range, within the resource, or null if it is not satisfiable
+   * @throws NumberFormatException if the range is malformed
+   */
+  private static ByteRange parseRange(final String range, final int resourceLength) {
+    final int dash = range.indexOf('-');
+    if (dash < 0) {
+      throw new NumberFormatException("Not a byte range: " + range);
+    }
 
-      resp.setContentType(mediaType.type() + '/' + mediaType.subtype());
+    final String first = range.substring(0, dash).trim();
+    final String last = range.substring(dash + 1).trim();
+    final long start;
+    final long end;
+    if (first.isEmpty()) {
+      final long suffixLength = bytePosition(last);
+      start = Math.max(resourceLength - suffixLength, 0);
+      end = suffixLength == 0 ? -1 : resourceLength - 1;
+    } else {
+      start = bytePosition(first);
+      end = last.isEmpty() ? resourceLength - 1 : Math.min(bytePosition(last), resourceLength - 1);
+    }
 
-      if (mediaType.charset().isPresent()) {
-        resp.setCharacterEncoding(mediaType.charset().get().toString());
-      }
+    if (start >= resourceLength || start > end) {
+      return null;
+    }
+    return new ByteRange((int) start, (int) end);
+  }
 
-      try (ServletOutputStream output = resp.getOutputStream()) {
-        if (usingRanges) {
-          for (final ByteRange range : ranges) {
-            output.write(cachedAsset.getResource(), range.getStart(),
-                    range.getEnd() - range.getStart() + 1);
-          }
-        } else {
-          output.write(cachedAsset.getResource());
-        }
+  private static long bytePosition(final String digits) {
+    if (digits.isEmpty()) {
+      throw new NumberFormatException("Missing byte position");
+    }
+    for (int i = 0; i < digits.length(); i++) {
+      if (digits.charAt(i) < '0' || digits.charAt(i) > '9') {
+        throw new NumberFormatException("Not a byte position: " + digits);
       }
-    } catch (RuntimeException ignored) {
-      resp.sendError(HttpServletResponse.SC_NOT_FOUND);
     }
-  }
-
-  private boolean isCachedClientSide(HttpServletRequest req, Asset cachedAsset) {
-    return cachedAsset.getETag().equals(req.getHeader(HttpHeaders.IF_NONE_MATCH))
-            || (req.getDateHeader(HttpHeaders.IF_MODIFIED_SINCE)
-            >= cachedAsset.getLastModifiedTime());
+    // Positions beyond any asset's length all mean the same thing.
+    return digits.length() > 18 ? Long.MAX_VALUE : Long.parseLong(digits);
   }
 
   /**
-   * Parses a given Range header for one or more byte ranges.
-   *
-   * @param rangeHeader    Range header to parse
-   * @param resourceLength Length of the resource in bytes
-   * @return List of parsed ranges
+   * Release the memory held by assets as they leave the cache, counting evictions and noting
+   * invalidations for the manifest.
    */
-  private ImmutableList<ByteRange> parseRangeHeader(final String rangeHeader,
-                                                    final int resourceLength) {
-    final ImmutableList.Builder<ByteRange> builder = ImmutableList.builder();
-    if (rangeHeader.contains("=")) {
-      final String[] parts = rangeHeader.split("=");
-      if (parts.length > 1) {
-        final List<String> ranges = Splitter.on(",").trimResults().splitToList(parts[1]);
-        for (final String range : ranges) {
-          builder.add(ByteRange.parse(range, resourceLength));
-        }
+  private final class AssetRemovalListener implements AssetCache.Listener {
+    @Override
+    public void onRemoval(String key, Asset asset, boolean evicted) {
+      asset.release();
+      if (evicted) {
+        metrics.evictions.inc();
+      } else {
+        // Invalidated, so it may come back different.
+        loader.changed(key);
       }
     }
-    return builder.build();
   }
 
-  private static class AssetLoader extends CacheLoader<String, Asset> {
+  private static class AssetLoader implements AssetCache.Loader {
     private final String indexFilename;
     private final Map<String, String> resourcePathToUriMappings = Maps.newHashMap();
     private final Iterable<Map.Entry<String, String>> overrides;
+    private volatile AssetAllocator allocator = AssetAllocator.HEAP;
+    private volatile boolean mapOverrides;
+    private volatile Charset defaultCharset;
+    private volatile Map<String, Integer> maxPreloadHints = ImmutableMap.of();
+    private volatile boolean transferOverrides;
+    private volatile boolean overridesWatched;
+    // The cache the loaded assets go into, for override files that change size as they refresh
+    private volatile AssetCache cache;
+    private volatile boolean gzip;
+    private volatile CacheControlTable cacheControl = CacheControlTable.EMPTY;
+    private volatile long maxCachedAssetSize = Long.MAX_VALUE;
+    private volatile Map<String, Long> maxCachedAssetSizeByType = ImmutableMap.of();
+    private final MimeTypes mimeTypes;
+    private final AssetIndex index;
+    // Counts the changes that may give an asset a different ETag
+    private final AtomicLong generation = new AtomicLong();
+    // The ETags of the assets in the fingerprint manifest, until their assets change
+    private final ConcurrentMap<String, String> etags = Maps.newConcurrentMap();
+    private final ExecutorService refresher = new ThreadPoolExecutor(0, 1, 1, TimeUnit.MINUTES,
+        new LinkedBlockingQueue<Runnable>(),
+        new ThreadFactoryBuilder().setNameFormat("assets-refresher-%d").setDaemon(true).build());
 
     private AssetLoader(Iterable<Map.Entry<String, String>> resourcePathToUriMappings,
                         String indexFilename,
-                        Iterable<Map.Entry<String, String>> overrides) {
+                        Iterable<Map.Entry<String, String>> overrides,
+                        MimeTypes mimeTypes) {
       for (Map.Entry<String, String> mapping : resourcePathToUriMappings) {
         final String trimmedPath = SLASHES.trimFrom(mapping.getKey());
         String resourcePath = trimmedPath.isEmpty() ? trimmedPath : trimmedPath + '/';
@@ -261,10 +1295,100 @@ public class AssetServlet extends HttpServlet {
 
       this.indexFilename = indexFilename;
       this.overrides = overrides;
+      this.mimeTypes = mimeTypes;
+      this.index = AssetIndex.load(MoreObjects.firstNonNull(
+          Thread.currentThread().getContextClassLoader(), AssetServlet.class.getClassLoader()));
+    }
+
+    /**
+     * The cache keys of every file found beneath the resource path mappings, apart from compressed
+     * siblings, which are loaded along with the asset they sit next to.
+     */
+    private Set<String> listAssetKeys() throws IOException {
+      Set<String> keys = Sets.newTreeSet();
+      for (Map.Entry<String, String> mapping : resourcePathToUriMappings.entrySet()) {
+        String uriPath = mapping.getValue().endsWith("/")
+            ? mapping.getValue() : mapping.getValue() + '/';
+        Set<String> paths = AssetScanner.list(mapping.getKey());
+        for (String path : paths) {
+          if (isSibling(path, paths)) {
+            continue;
+          }
+          keys.add(uriPath + path);
+          if (indexFilename != null
+              && (path.equals(indexFilename) || path.endsWith('/' + indexFilename))) {
+            // Directory requests are served with the index file.
+            keys.add(uriPath + path.substring(0, path.length() - indexFilename.length()));
+          }
+        }
+      }
+      return keys;
+    }
+
+    /**
+     * Notes that the asset for a key may have changed.
+     */
+    private void changed(String key) {
+      // Counted before the ETag is forgotten, so a manifest build that notes the old ETag after
+      // this also sees the new generation.
+      generation.incrementAndGet();
+      etags.remove(key);
+    }
+
+    /**
+     * Notes that any asset may have changed.
+     */
+    private void changedAll() {
+      generation.incrementAndGet();
+      etags.clear();
+    }
+
+    /**
+     * The files in the override directories that are served for keys beneath the mappings, by
+     * key.
+     */
+    private Map<String, File> listOverrideFiles() {
+      Map<String, File> files = Maps.newTreeMap();
+      for (Map.Entry<String, String> override : overrides) {
+        addOverrideFiles(files, override.getKey(), new File(override.getValue()));
+      }
+      return files;
+    }
+
+    private void addOverrideFiles(Map<String, File> files, String key, File file) {
+      if (file.isDirectory()) {
+        File[] children = file.listFiles();
+        String directory = key.endsWith("/") ? key : key + '/';
+        for (File child : children == null ? new File[0] : children) {
+          addOverrideFiles(files, directory + child.getName(), child);
+        }
+      } else if (file.isFile() && isMapped(key) && !files.containsKey(key)) {
+        // The first override a key falls under is the one it is served from.
+        files.put(key, file);
+      }
+    }
+
+    private boolean isMapped(String key) {
+      for (String uriPath : resourcePathToUriMappings.values()) {
+        if (key.startsWith(uriPath)) {
+          return true;
+        }
+      }
+      return false;
     }
 
     @Override
     public Asset load(String key) throws Exception {
+      Asset asset = loadAsset(key);
+      if (asset != null) {
+        asset.setCacheControl(cacheControl.lookup(key));
+        asset.setContentType(contentType(key));
+        asset.setPreloadHints(preloadHints(key));
+      }
+      return asset;
+    }
+
+    private Asset loadAsset(String key) throws Exception {
       for (Map.Entry<String, String> mapping : resourcePathToUriMappings.entrySet()) {
         if (!key.startsWith(mapping.getValue())) {
           continue;
@@ -275,25 +1399,18 @@ public class AssetServlet extends HttpServlet {
           return asset;
         }
 
-        final String requestedResourcePath =
-                SLASHES.trimFrom(key.substring(mapping.getValue().length()));
-        final String absolutePath = SLASHES.trimFrom(mapping.getKey() + requestedResourcePath);
-
         try {
-          URL requestedResourceUrl =
-              UrlUtil.switchFromZipToJarProtocolIfNeeded(Resources.getResource(absolutePath));
-          if (ResourceURL.isDirectory(requestedResourceUrl)) {
-            if (indexFilename != null) {
-              requestedResourceUrl = Resources.getResource(absolutePath + '/' + indexFilename);
-              requestedResourceUrl =
-                  UrlUtil.switchFromZipToJarProtocolIfNeeded(requestedResourceUrl);
-            } else {
-              // resource mapped to directory but no index file defined
-              continue;
-            }
+          String resolvedPath = resolveResourcePath(mapping, key);
+          if (resolvedPath == null) {
+            // resource mapped to directory but no index file defined
+            continue;
           }
+          URL requestedResourceUrl =
+              UrlUtil.switchFromZipToJarProtocolIfNeeded(Resources.getResource(resolvedPath));
 
-          long lastModified = ResourceURL.getLastModified(requestedResourceUrl);
+          AssetIndex.Entry indexed = index.get(resolvedPath);
+          long lastModified = indexed != null
+              ? indexed.getLastModified() : ResourceURL.getLastModified(requestedResourceUrl);
           if (lastModified < 1) {
             // Something went wrong trying to get the last modified time: just use the current time
             lastModified = System.currentTimeMillis();
@@ -301,7 +1418,30 @@ public class AssetServlet extends HttpServlet {
 
           // zero out the millis; the If-Modified-Since header will not have them
           lastModified = (lastModified / 1000) * 1000;
-          return new StaticAsset(Resources.toByteArray(requestedResourceUrl), lastModified);
+
+          long maxSize = maxCachedAssetSize(key);
+          Map<String, StaticAsset> siblings =
+              loadSiblings(resolvedPath, indexed, lastModified, maxSize);
+          if (maxSize != Long.MAX_VALUE) {
+            long length = indexed != null
+                ? indexed.getSize() : contentLength(requestedResourceUrl);
+            if (length > maxSize) {
+              // Only the metadata is cached; hashing the contents would mean reading them all.
+              return new StaticAsset(
+                  AssetBody.streamed(Resources.asByteSource(requestedResourceUrl),
+                      Ints.checkedCast(length)),
+                  indexed != null ? indexETag(indexed) : sizeAndTimeETag(length, lastModified),
+                  lastModified, siblings);
+            }
+          }
+
+          byte[] bytes = Resources.toByteArray(requestedResourceUrl);
+          if (indexed != null && bytes.length == indexed.getSize()) {
+            // Hashed and compressed at build time
+            return new StaticAsset(allocator.allocate(bytes), indexETag(indexed), lastModified,
+                siblings);
+          }
+          return new StaticAsset(bytes, lastModified, allocator, gzip, siblings);
         } catch (IllegalArgumentException expected) {
           // Try another Mapping.
         }
@@ -310,7 +1450,48 @@ public class AssetServlet extends HttpServlet {
       return null;
     }
 
+    /**
+     * The classpath resource the asset for a key beneath the given mapping is loaded from, which
+     * for a directory is its index file.
+     *
+     * @return the resource's path, or null if the key is for a directory and there are no index
+     *         files
+     * @throws IllegalArgumentException if there is no such resource
+     */
+    private String resolveResourcePath(Map.Entry<String, String> mapping, String key)
+        throws MalformedURLException {
+      final String requestedResourcePath =
+              SLASHES.trimFrom(key.substring(mapping.getValue().length()));
+      final String absolutePath = SLASHES.trimFrom(mapping.getKey() + requestedResourcePath);
+
+      URL requestedResourceUrl =
+          UrlUtil.switchFromZipToJarProtocolIfNeeded(Resources.getResource(absolutePath));
+      if (!ResourceURL.isDirectory(requestedResourceUrl)) {
+        return absolutePath;
+      }
+      if (indexFilename == null) {
+        return null;
+      }
+
+      String resolvedPath = absolutePath + '/' + indexFilename;
+      // Throws if the directory has no index file
+      Resources.getResource(resolvedPath);
+      return resolvedPath;
+    }
+
     private Asset loadOverride(String key) throws Exception {
+      File file = resolveOverride(key);
+      if (file == null) {
+        return null;
+      }
+      return new FileSystemAsset(key, file, mapOverrides ? null : allocator,
+          maxCachedAssetSize(key), this);
+    }
+
+    /**
+     * The file in the override directories the asset for a key is loaded from, if any.
+     */
+    private File resolveOverride(String key) {
       // TODO: Support prefix matches only for directories
       for (Map.Entry<String, String> override : overrides) {
         File file = null;
@@ -327,87 +1508,522 @@ public class AssetServlet extends HttpServlet {
         }
 
         if (file.isDirectory()) {
+          if (indexFilename == null) {
+            continue;
+          }
           file = new File(file, indexFilename);
         }
 
         if (file.exists()) {
-          return new FileSystemAsset(file);
+          return file;
         }
       }
 
       return null;
     }
-  }
 
-  private static interface Asset {
-    byte[] getResource();
+    /**
+     * Describes the asset for a key without reading its contents, for HEAD requests.  This is
+     * only possible when the asset's ETag, and those of its variants, do not come from hashing
+     * the contents at load time: for assets in the build-time index, and for streamed or
+     * memory-mapped assets.
+     *
+     * @return an asset whose bodies are never read, or null if the asset has to be loaded to
+     *         describe it (or there is no asset for the key)
+     */
+    private Asset describe(String key) throws IOException {
+      if (preloadHints(key) != null) {
+        // The hints come from the document's contents.
+        return null;
+      }
 
-    String getETag();
+      Asset asset = describeAsset(key);
+      if (asset != null) {
+        asset.setCacheControl(cacheControl.lookup(key));
+        asset.setContentType(contentType(key));
+      }
+      return asset;
+    }
 
-    long getLastModifiedTime();
-  }
+    /**
+     * The preload hints to send with the asset for a key, if it is an index document, requested
+     * by its directory or by name, beneath a mapping with hints enabled.
+     *
+     * @return the hints, or null to send none
+     */
+    private PreloadHints preloadHints(String key) {
+      if (indexFilename == null
+          || !(key.endsWith("/") || key.endsWith('/' + indexFilename))) {
+        return null;
+      }
 
-  /**
-   * Weigh an asset according to the number of bytes it contains.
-   */
-  private static final class AssetSizeWeigher implements Weigher<String, Asset> {
-    @Override
-    public int weigh(String key, Asset asset) {
-      return asset.getResource().length;
+      for (Map.Entry<String, Integer> limit : maxPreloadHints.entrySet()) {
+        if (key.startsWith(limit.getKey())) {
+          return limit.getValue() <= 0 ? null : new PreloadHints(key, limit.getValue(),
+              resourcePathToUriMappings.values(),
+              defaultCharset == null ? Charsets.UTF_8 : defaultCharset);
+        }
+      }
+      return null;
+    }
+
+    /**
+     * The Content-Type for a key, from its extension.
+     *
+     * @return the content type, or null if the extension has no mime type
+     */
+    private ContentType contentType(String key) {
+      String mimeType = mimeTypes.getMimeByExtension(key);
+      return mimeType == null ? null : ContentType.of(mimeType, defaultCharset);
+    }
+
+    private Asset describeAsset(String key) throws IOException {
+      for (Map.Entry<String, String> mapping : resourcePathToUriMappings.entrySet()) {
+        if (!key.startsWith(mapping.getValue())) {
+          continue;
+        }
+
+        File file = resolveOverride(key);
+        if (file != null) {
+          return describeOverride(file, maxCachedAssetSize(key));
+        }
+
+        try {
+          String resolvedPath = resolveResourcePath(mapping, key);
+          if (resolvedPath != null) {
+            return describeResource(resolvedPath, maxCachedAssetSize(key));
+          }
+        } catch (IllegalArgumentException expected) {
+          // Try another Mapping.
+        }
+      }
+      return null;
+    }
+
+    /**
+     * Describes a classpath resource in the same way {@link #loadAsset(String)} would load it.
+     */
+    private Asset describeResource(String resolvedPath, long maxSize) throws IOException {
+      URL url = UrlUtil.switchFromZipToJarProtocolIfNeeded(Resources.getResource(resolvedPath));
+      AssetIndex.Entry indexed = index.get(resolvedPath);
+      long lastModified = indexed != null
+          ? indexed.getLastModified() : ResourceURL.getLastModified(url);
+      if (lastModified < 1) {
+        // Loading it would stamp it with the current time.
+        return null;
+      }
+      lastModified = (lastModified / 1000) * 1000;
+
+      long length = contentLength(url);
+      if (indexed != null && length == indexed.getSize()) {
+        ImmutableMap.Builder<String, StaticAsset> variants = ImmutableMap.builder();
+        for (Map.Entry<String, String> extension : SIBLING_ENCODINGS.entrySet()) {
+          AssetIndex.Entry indexedSibling = indexed.getEncodings().get(extension.getValue());
+          if (indexedSibling == null) {
+            continue;
+          }
+
+          URL siblingUrl = UrlUtil.switchFromZipToJarProtocolIfNeeded(
+              Resources.getResource(resolvedPath + extension.getKey()));
+          if (contentLength(siblingUrl) != indexedSibling.getSize()) {
+            return null;
+          }
+          variants.put(extension.getValue(), new StaticAsset(
+              AssetBody.streamed(Resources.asByteSource(siblingUrl),
+                  Ints.checkedCast(indexedSibling.getSize())),
+              encodedETag(indexETag(indexedSibling), extension.getValue()), lastModified));
+        }
+        return new StaticAsset(
+            AssetBody.streamed(Resources.asByteSource(url), Ints.checkedCast(length)),
+            indexETag(indexed), lastModified, variants.build());
+      }
+
+      if (indexed == null && length > maxSize) {
+        for (String extension : SIBLING_ENCODINGS.keySet()) {
+          if (hasResource(resolvedPath + extension)) {
+            // Small siblings are hashed as they are loaded.
+            return null;
+          }
+        }
+        return new StaticAsset(
+            AssetBody.streamed(Resources.asByteSource(url), Ints.checkedCast(length)),
+            sizeAndTimeETag(length, lastModified), lastModified);
+      }
+      return null;
+    }
+
+    /**
+     * Describes an override file in the same way {@link FileSystemAsset} would read it.
+     */
+    private Asset describeOverride(File file, long maxSize) {
+      long lastModifiedTime = file.lastModified();
+      long length = file.length();
+      boolean metadataOnly = mapOverrides || transferOverrides;
+      if (length <= maxSize && !metadataOnly) {
+        return null;
+      }
+
+      ImmutableMap.Builder<String, StaticAsset> siblings = ImmutableMap.builder();
+      for (Map.Entry<String, String> extension : SIBLING_ENCODINGS.entrySet()) {
+        File sibling = new File(file.getPath() + extension.getKey());
+        if (!sibling.isFile()) {
+          continue;
+        }
+        if (sibling.length() <= maxSize && !metadataOnly) {
+          return null;
+        }
+        siblings.put(extension.getValue(), StaticAsset.sibling(
+            AssetBody.file(sibling, Ints.checkedCast(sibling.length())),
+            extension.getValue(), lastModifiedTime, sibling.lastModified()));
+      }
+      return new StaticAsset(AssetBody.file(file, Ints.checkedCast(length)),
+          sizeAndTimeETag(length, lastModifiedTime), lastModifiedTime, siblings.build());
+    }
+
+    private static boolean hasResource(String resourcePath) {
+      return findResource(resourcePath) != null;
+    }
+
+    /**
+     * Looks up a classpath resource with the same class loader as {@link Resources#getResource},
+     * but returns null rather than throwing when there is none.
+     */
+    private static URL findResource(String resourcePath) {
+      return MoreObjects.firstNonNull(Thread.currentThread().getContextClassLoader(),
+          AssetServlet.class.getClassLoader()).getResource(resourcePath);
+    }
+
+    /**
+     * The size above which the asset for the given key is streamed rather than cached.
+     */
+    private long maxCachedAssetSize(String key) {
+      Map<String, Long> limits = maxCachedAssetSizeByType;
+      String mimeType = limits.isEmpty() ? null : mimeTypes.getMimeByExtension(key);
+      if (mimeType != null) {
+        int parameters = mimeType.indexOf(';');
+        if (parameters >= 0) {
+          mimeType = mimeType.substring(0, parameters);
+        }
+
+        Long limit = limits.get(mimeType);
+        if (limit == null) {
+          limit = limits.get(mimeType.substring(0, mimeType.indexOf('/') + 1) + '*');
+        }
+        if (limit != null) {
+          return limit;
+        }
+      }
+      return maxCachedAssetSize;
+    }
+
+    /**
+     * Loads the build-time compressed siblings of a classpath resource, such as {@code app.js.gz}
+     * and {@code app.js.br} next to {@code app.js}, as variants of its asset.  Only the siblings
+     * listed in the resource's index entry are loaded for an indexed resource.
+     */
+    private Map<String, StaticAsset> loadSiblings(String resourcePath, AssetIndex.Entry indexed,
+                                                  long lastModified, long maxSize)
+        throws IOException {
+      ImmutableMap.Builder<String, StaticAsset> siblings = ImmutableMap.builder();
+      for (Map.Entry<String, String> extension : SIBLING_ENCODINGS.entrySet()) {
+        String encoding = extension.getValue();
+        AssetIndex.Entry indexedSibling = indexed != null
+            ? indexed.getEncodings().get(encoding) : null;
+        if (indexed != null && indexedSibling == null) {
+          continue;
+        }
+
+        URL resource = findResource(resourcePath + extension.getKey());
+        if (resource == null) {
+          // Most resources have no siblings; an exception for each would be costly.
+          continue;
+        }
+        URL url = UrlUtil.switchFromZipToJarProtocolIfNeeded(resource);
+
+        long length = indexedSibling != null ? indexedSibling.getSize()
+            : maxSize == Long.MAX_VALUE ? -1 : contentLength(url);
+        if (length > maxSize) {
+          AssetBody body =
+              AssetBody.streamed(Resources.asByteSource(url), Ints.checkedCast(length));
+          siblings.put(encoding, indexedSibling != null
+              ? new StaticAsset(body, encodedETag(indexETag(indexedSibling), encoding),
+                  lastModified)
+              : StaticAsset.sibling(body, encoding, lastModified, lastModified));
+          continue;
+        }
+
+        byte[] bytes = Resources.toByteArray(url);
+        siblings.put(encoding, indexedSibling != null && bytes.length == indexedSibling.getSize()
+            ? new StaticAsset(allocator.allocate(bytes),
+                encodedETag(indexETag(indexedSibling), encoding), lastModified)
+            : StaticAsset.sibling(bytes, encoding, lastModified, allocator));
+      }
+      return siblings.build();
+    }
+
+    private static long contentLength(URL url) throws IOException {
+      if ("file".equals(url.getProtocol())) {
+        try {
+          return new File(url.toURI()).length();
+        } catch (URISyntaxException e) {
+          return -1;
+        }
+      }
+      return url.openConnection().getContentLengthLong();
     }
   }
 
   /**
    * An asset implementation backed by the file-system.  If the backing file changes on disk, then
-   * this asset will automatically reload its contents from disk.
+   * this asset will automatically reload its contents from disk.  Without an allocator the file is
+   * memory-mapped instead of read, and files larger than the cached size limit are streamed.
+   *
+   * <p>Each version of the file is published as an immutable {@link StaticAsset}, so requests never
+   * block: a request that notices the file has changed hands the reload to the refresher and keeps
+   * serving the version it already has.  While the override directories are watched, requests do
+   * not check the file at all and the watcher reports changes instead.</p>
    */
   private static class FileSystemAsset implements Asset {
+    private final String key;
     private final File file;
-    private byte[] bytes;
-    private String etag;
-    private long lastModifiedTime;
-
-    public FileSystemAsset(File file) {
+    private final AssetAllocator allocator;
+    private final long maxCachedAssetSize;
+    private final AssetLoader loader;
+    private final AtomicBoolean refreshing = new AtomicBoolean(false);
+    private volatile StaticAsset current;
+    private volatile CacheControl cacheControl = CacheControl.NONE;
+    private volatile ContentType contentType;
+    private PreloadHints preloadHints;
+    private volatile String preloadLinks;
+    private boolean released = false;
+
+    public FileSystemAsset(String key, File file, AssetAllocator allocator,
+                           long maxCachedAssetSize, AssetLoader loader) throws IOException {
+      this.key = key;
       this.file = file;
-      refresh();
+      this.allocator = allocator;
+      this.maxCachedAssetSize = maxCachedAssetSize;
+      this.loader = loader;
+      this.current = read();
+    }
+
+    @Override
+    public Asset snapshot() {
+      StaticAsset snapshot = current;
+      if (!loader.overridesWatched) {
+        refreshIfModified();
+      }
+      return snapshot;
+    }
+
+    /**
+     * Reloads the file in the background if it has changed since it was last read.
+     */
+    private void refreshIfModified() {
+      if (current.lastModifiedTime != file.lastModified()
+          && refreshing.compareAndSet(false, true)) {
+        try {
+          loader.refresher.execute(new Runnable() {
+            @Override
+            public void run() {
+              try {
+                refresh();
+              } finally {
+                refreshing.set(false);
+              }
+            }
+          });
+        } catch (RejectedExecutionException e) {
+          // The servlet is being destroyed.
+          refreshing.set(false);
+        }
+      }
+    }
+
+    @Override
+    public AssetBody getResource() {
+      return current.getResource();
+    }
+
+    @Override
+    public Asset getVariant(String encoding) {
+      return current.getVariant(encoding);
+    }
+
+    @Override
+    public Set<String> getEncodings() {
+      return current.getEncodings();
+    }
+
+    @Override
+    public int weight() {
+      return current.weight();
     }
 
     @Override
-    public byte[] getResource() {
-      maybeRefresh();
-      return bytes;
+    public CacheControl getCacheControl() {
+      return cacheControl;
+    }
+
+    @Override
+    public void setCacheControl(CacheControl cacheControl) {
+      this.cacheControl = cacheControl;
+    }
+
+    @Override
+    public ContentType getContentType() {
+      return contentType;
+    }
+
+    @Override
+    public void setContentType(ContentType contentType) {
+      this.contentType = contentType;
+    }
+
+    @Override
+    public String getPreloadLinks() {
+      return preloadLinks;
+    }
+
+    @Override
+    public synchronized void setPreloadHints(PreloadHints hints) {
+      this.preloadHints = hints;
+      this.preloadLinks = hints == null ? null : hints.linksFor(current.getResource());
     }
 
     @Override
     public String getETag() {
-      maybeRefresh();
-      return etag;
+      return current.getETag();
     }
 
     @Override
     public long getLastModifiedTime() {
-      maybeRefresh();
-      return (lastModifiedTime / 1000) * 1000;
+      return current.getLastModifiedTime();
     }
 
-    private synchronized void maybeRefresh() {
-      if (lastModifiedTime != file.lastModified()) {
-        refresh();
-      }
+    @Override
+    public synchronized void release() {
+      released = true;
+      current.release();
     }
 
     private synchronized void refresh() {
-      try {
-        byte[] newBytes = Files.toByteArray(file);
-        String newETag = Hashing.murmur3_128().hashBytes(newBytes).toString();
+      if (released) {
+        return;
+      }
 
-        bytes = newBytes;
-        etag = '"' + newETag + '"';
-        lastModifiedTime = file.lastModified();
+      try {
+        StaticAsset previous = current;
+        current = read();
+        loader.changed(key);
+        if (preloadHints != null) {
+          preloadLinks = preloadHints.linksFor(current.getResource());
+        }
+        boolean resized = current.weight() != previous.weight();
+        // Requests still writing the previous body hold their own reference to it.
+        previous.release();
+        if (resized) {
+          // The cache weighed the asset as it was when it was loaded.
+          loader.cache.reweigh(key, this);
+        }
       } catch (IOException e) {
-        // Ignored, don't update anything
+        // Ignored, keep serving the previous version
+      }
+    }
+
+    private StaticAsset read() throws IOException {
+      long lastModifiedTime = file.lastModified();
+      long length = file.length();
+      Map<String, StaticAsset> siblings = readSiblings(lastModifiedTime);
+      if (length > maxCachedAssetSize || loader.transferOverrides) {
+        AssetBody body = AssetBody.file(file, Ints.checkedCast(length));
+        return new StaticAsset(body, sizeAndTimeETag(length, lastModifiedTime), lastModifiedTime,
+            siblings);
+      }
+
+      if (allocator == null) {
+        AssetBody body = AssetBody.map(file);
+        // Hashing the mapping would fault in every page of the file.
+        return new StaticAsset(body, sizeAndTimeETag(body.length(), lastModifiedTime),
+            lastModifiedTime, siblings);
+      }
+
+      byte[] bytes = Files.toByteArray(file);
+      return new StaticAsset(bytes, lastModifiedTime, allocator, loader.gzip, siblings);
+    }
+
+    /**
+     * Reads the build-time compressed siblings of the file, such as {@code app.js.gz} next to
+     * {@code app.js}, in the same way as the file itself.
+     */
+    private Map<String, StaticAsset> readSiblings(long lastModifiedTime) throws IOException {
+      ImmutableMap.Builder<String, StaticAsset> siblings = ImmutableMap.builder();
+      for (Map.Entry<String, String> extension : SIBLING_ENCODINGS.entrySet()) {
+        File sibling = new File(file.getPath() + extension.getKey());
+        if (!sibling.isFile()) {
+          continue;
+        }
+
+        String encoding = extension.getValue();
+        long length = sibling.length();
+        if (length > maxCachedAssetSize || loader.transferOverrides) {
+          siblings.put(encoding, StaticAsset.sibling(
+              AssetBody.file(sibling, Ints.checkedCast(length)), encoding, lastModifiedTime,
+              sibling.lastModified()));
+        } else if (allocator == null) {
+          siblings.put(encoding, StaticAsset.sibling(AssetBody.map(sibling), encoding,
+              lastModifiedTime, sibling.lastModified()));
+        } else {
+          siblings.put(encoding, StaticAsset.sibling(Files.toByteArray(sibling), encoding,
+              lastModifiedTime, allocator));
+        }
       }
+      return siblings.build();
+    }
+  }
+
+  /**
+   * Compresses an asset with gzip.
+   *
+   * @return the compressed bytes, or null if compression does not make the asset much smaller
+   */
+  private static byte[] gzip(byte[] resource) throws IOException {
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream(resource.length / 2);
+    try (GZIPOutputStream output = new GZIPOutputStream(compressed)) {
+      output.write(resource);
+    }
+
+    if (compressed.size() > resource.length * MAX_GZIP_RATIO) {
+      return null;
     }
+    return compressed.toByteArray();
+  }
+
+  /**
+   * The ETag of an asset's variant with the given content-coding.  Variants are different
+   * representations of the asset, so they must not share its ETag.
+   */
+  private static String encodedETag(String etag, String encoding) {
+    return etag.substring(0, etag.length() - 1) + '-' + encoding + '"';
+  }
+
+  private static String hashETag(byte[] resource) {
+    return '"' + Hashing.murmur3_128().hashBytes(resource).toString() + '"';
+  }
+
+  /**
+   * The ETag for an asset hashed at build time.
+   */
+  private static String indexETag(AssetIndex.Entry indexed) {
+    return '"' + indexed.getHash() + '"';
+  }
+
+  /**
+   * An ETag for assets whose contents are not hashed, identifying a version by its size and
+   * modification time.
+   */
+  private static String sizeAndTimeETag(long length, long lastModifiedTime) {
+    return '"' + Long.toHexString(length) + '-' + Long.toHexString(lastModifiedTime) + '"';
   }
 
   /**
@@ -415,26 +2031,124 @@ public class AssetServlet extends HttpServlet {
    * asset (presumably loaded from the classpath) and will never change.
    */
   private static class StaticAsset implements Asset {
-    private final byte[] resource;
+    private final AssetBody resource;
     private final String etag;
     private final long lastModifiedTime;
+    private final Map<String, StaticAsset> variants;
+    private volatile CacheControl cacheControl = CacheControl.NONE;
+    private volatile ContentType contentType;
+    private volatile String preloadLinks;
+
+    private StaticAsset(byte[] resource, long lastModifiedTime, AssetAllocator allocator,
+                        boolean gzip, Map<String, StaticAsset> siblings) throws IOException {
+      this.etag = hashETag(resource);
+      this.resource = allocator.allocate(resource);
+      this.lastModifiedTime = lastModifiedTime;
+
+      // A compressed sibling from the build is preferred to compressing the asset again.
+      byte[] compressed = gzip && !siblings.containsKey(GZIP) ? gzip(resource) : null;
+      this.variants = compressed == null
+          ? siblings
+          : ImmutableMap.<String, StaticAsset>builder()
+              .putAll(siblings)
+              .put(GZIP, new StaticAsset(allocator.allocate(compressed), encodedETag(etag, GZIP),
+                  lastModifiedTime))
+              .build();
+    }
+
+    private StaticAsset(AssetBody resource, String etag, long lastModifiedTime) {
+      this(resource, etag, lastModifiedTime, ImmutableMap.<String, StaticAsset>of());
+    }
 
-    private StaticAsset(byte[] resource, long lastModifiedTime) {
+    private StaticAsset(AssetBody resource, String etag, long lastModifiedTime,
+                        Map<String, StaticAsset> variants) {
       this.resource = resource;
-      this.etag = '"' + Hashing.murmur3_128().hashBytes(resource).toString() + '"';
+      this.etag = etag;
       this.lastModifiedTime = lastModifiedTime;
+      this.variants = variants;
+    }
+
+    /**
+     * A variant of an asset, read from a build-time compressed sibling file.
+     */
+    private static StaticAsset sibling(byte[] resource, String encoding, long lastModifiedTime,
+                                       AssetAllocator allocator) {
+      return new StaticAsset(allocator.allocate(resource),
+          encodedETag(hashETag(resource), encoding), lastModifiedTime);
+    }
+
+    /**
+     * A variant of an asset whose contents are not hashed: a streamed or memory-mapped sibling.
+     */
+    private static StaticAsset sibling(AssetBody resource, String encoding, long lastModifiedTime,
+                                       long siblingModifiedTime) {
+      return new StaticAsset(resource,
+          encodedETag(sizeAndTimeETag(resource.length(), siblingModifiedTime), encoding),
+          lastModifiedTime);
+    }
+
+    public Asset snapshot() {
+      return this;
     }
 
-    public byte[] getResource() {
+    public AssetBody getResource() {
       return resource;
     }
 
+    public void release() {
+      resource.release();
+      for (StaticAsset variant : variants.values()) {
+        variant.release();
+      }
+    }
+
     public String getETag() {
       return etag;
     }
 
     public long getLastModifiedTime() {
-      return lastModifiedTime;
+      // zero out the millis; the If-Modified-Since header will not have them
+      return (lastModifiedTime / 1000) * 1000;
+    }
+
+    public Asset getVariant(String encoding) {
+      return variants.get(encoding);
+    }
+
+    public Set<String> getEncodings() {
+      return variants.keySet();
+    }
+
+    public int weight() {
+      int weight = resource.weight();
+      for (StaticAsset variant : variants.values()) {
+        weight += variant.weight();
+      }
+      return weight;
+    }
+
+    public CacheControl getCacheControl() {
+      return cacheControl;
+    }
+
+    public void setCacheControl(CacheControl cacheControl) {
+      this.cacheControl = cacheControl;
+    }
+
+    public ContentType getContentType() {
+      return contentType;
+    }
+
+    public void setContentType(ContentType contentType) {
+      this.contentType = contentType;
+    }
+
+    public String getPreloadLinks() {
+      return preloadLinks;
+    }
+
+    public void setPreloadHints(PreloadHints hints) {
+      this.preloadLinks = hints == null ? null : hints.linksFor(resource);
     }
   }
 
@@ -0,0 +1,17 @@
+package io.dropwizard.bundles.assets;
+
+/**
+ * Where the bytes of cached assets are kept.
+ */
+public enum AssetStorage {
+  /**
+   * Asset bytes are kept in ordinary {@code byte[]}s on the Java heap.
+   */
+  HEAP,
+
+  /**
+   * Asset bytes are kept in direct buffers outside of the Java heap, up to a fixed budget.  Assets
+   * that do not fit in the remaining budget are kept on the heap instead.
+   */
+  OFF_HEAP
+}
@@ -0,0 +1,44 @@
+package io.dropwizard.bundles.assets;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Maps asset paths to the fingerprinted paths an {@link AssetServlet} serves them at, for use in
+ * views and anywhere else that links to assets.  A fingerprinted path such as
+ * {@code /assets/app.3f9a1c0b7d2e.js} changes whenever the asset does, so it can be cached
+ * forever.
+ *
+ * <p>Paths are request paths relative to the application's context path, such as
+ * {@code /assets/app.js}.  When fingerprinting is off, every path resolves to itself.</p>
+ *
+ * @see ConfiguredAssetsBundle#getUrlResolver()
+ */
+public class AssetUrlResolver {
+  private final AssetServlet servlet;
+
+  public AssetUrlResolver(AssetServlet servlet) {
+    this.servlet = servlet;
+  }
+
+  /**
+   * Resolves the fingerprinted path of an asset, loading the asset if it is not cached.
+   *
+   * @param path the asset's path
+   * @return the fingerprinted path, or {@code path} itself if there is no asset at that path
+   */
+  public String resolve(String path) {
+    return servlet.fingerprintedPath(path);
+  }
+
+  /**
+   * The fingerprinted path of every asset beneath the servlet's resource path mappings, by its
+   * path.  This is what the servlet serves as its manifest.
+   *
+   * @return the fingerprinted paths, sorted by path
+   * @throws IOException if the classpath could not be listed
+   */
+  public Map<String, String> manifest() throws IOException {
+    return servlet.fingerprintManifest();
+  }
+}
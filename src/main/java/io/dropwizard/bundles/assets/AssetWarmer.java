@@ -0,0 +1,113 @@
+package io.dropwizard.bundles.assets;
+
+import com.codahale.metrics.health.HealthCheck;
+import com.google.common.base.Stopwatch;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.dropwizard.lifecycle.Managed;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Loads the assets beneath an {@link AssetServlet}'s mappings into its cache in the background
+ * once the application starts, so that the first requests after a deploy do not pay for classpath
+ * reads and hashing.  The application takes traffic while the warm-up runs, so its
+ * {@link #readinessCheck() readiness check} stays unhealthy until the warm-up has finished, for
+ * load balancers that should hold traffic back until then.
+ */
+class AssetWarmer implements Managed {
+  private static final Logger LOGGER = LoggerFactory.getLogger(AssetWarmer.class);
+
+  private final AssetServlet servlet;
+  private final int threads;
+
+  private volatile boolean ready = false;
+  private volatile int assetCount = 0;
+  private volatile long durationMillis = 0;
+  private volatile ExecutorService executor;
+  private volatile Thread warmer;
+
+  AssetWarmer(AssetServlet servlet, int threads) {
+    this.servlet = servlet;
+    this.threads = threads;
+  }
+
+  @Override
+  public void start() throws Exception {
+    executor = Executors.newFixedThreadPool(threads,
+        new ThreadFactoryBuilder().setNameFormat("assets-warmup-%d").setDaemon(true).build());
+    warmer = new ThreadFactoryBuilder().setNameFormat("assets-warmer").setDaemon(true).build()
+        .newThread(new Runnable() {
+          @Override
+          public void run() {
+            warmUp();
+          }
+        });
+    warmer.start();
+  }
+
+  @Override
+  public void stop() throws Exception {
+    if (warmer != null) {
+      warmer.interrupt();
+    }
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * A warm-up that fails still counts as finished, since the assets it did not load are loaded as
+   * they are requested.
+   */
+  private void warmUp() {
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    try {
+      assetCount = servlet.warmUp(executor);
+      durationMillis = stopwatch.elapsed(TimeUnit.MILLISECONDS);
+      LOGGER.info("Warmed up {} assets in {} ms", assetCount, durationMillis);
+    } catch (InterruptedException e) {
+      // Stopped along with the application.
+      return;
+    } catch (IOException | RuntimeException e) {
+      LOGGER.warn("Asset warm-up failed; assets will be loaded as they are requested", e);
+    } finally {
+      executor.shutdown();
+    }
+    ready = true;
+  }
+
+  /**
+   * Whether the warm-up has finished.
+   */
+  boolean isReady() {
+    return ready;
+  }
+
+  int getAssetCount() {
+    return assetCount;
+  }
+
+  long getDurationMillis() {
+    return durationMillis;
+  }
+
+  /**
+   * A health check that stays unhealthy until the warm-up has finished, for use as a readiness
+   * check by load balancers.
+   */
+  HealthCheck readinessCheck() {
+    return new HealthCheck() {
+      @Override
+      protected Result check() throws Exception {
+        if (!ready) {
+          return Result.unhealthy("Asset warm-up has not finished");
+        }
+        return Result.healthy("Warmed up %d assets in %d ms", assetCount, durationMillis);
+      }
+    };
+  }
+}
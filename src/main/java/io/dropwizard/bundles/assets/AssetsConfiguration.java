@@ -3,10 +3,15 @@ package io.dropwizard.bundles.assets;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
+import io.dropwizard.util.Duration;
+import io.dropwizard.util.Size;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 
 public class AssetsConfiguration {
@@ -28,14 +33,187 @@ public class AssetsConfiguration {
   @JsonProperty
   private String cacheSpec = null;
 
+  /**
+   * The caching specification for remembering requested paths that resolved to no asset. If null
+   * the default spec of "maximumSize=1000,expireAfterWrite=10s" will be used.
+   *
+   * @see ConfiguredAssetsBundle#DEFAULT_MISSING_ASSET_CACHE_SPEC
+   */
+  @JsonProperty
+  private String missingAssetCacheSpec = null;
+
+  /**
+   * The cache implementation that {@code cacheSpec} configures.
+   */
+  @NotNull
+  @JsonProperty
+  private AssetCacheEngine cacheEngine = AssetCacheEngine.GUAVA;
+
   @NotNull
   @JsonProperty
   private Map<String, String> overrides = Maps.newHashMap();
 
+  /**
+   * Where the bytes of cached assets are kept.  Off-heap storage keeps large asset caches out of
+   * the garbage collector's way; at most {@code offHeapBudget} bytes are kept off-heap.
+   */
+  @NotNull
+  @JsonProperty
+  private AssetStorage storage = AssetStorage.HEAP;
+
+  @NotNull
+  @JsonProperty
+  private Size offHeapBudget = Size.megabytes(64);
+
+  /**
+   * Serve files from the override directories out of memory mappings rather than copying them
+   * onto the heap.
+   */
+  @JsonProperty
+  private boolean mapOverrides = false;
+
+  /**
+   * Send files from the override directories from a mapping made when they are first sent, caching
+   * only their metadata on the heap.  Takes precedence over {@code mapOverrides}.
+   */
+  @JsonProperty
+  private boolean transferOverrides = false;
+
+  /**
+   * How changes to files in the override directories are noticed.  When watched or polled,
+   * requests for cached overrides no longer touch the file-system; polling scans the directories
+   * every {@code overridePollInterval}.
+   */
+  @NotNull
+  @JsonProperty
+  private OverrideWatchMode overrideWatchMode = OverrideWatchMode.REQUEST;
+
+  @NotNull
+  @JsonProperty
+  private Duration overridePollInterval = Duration.seconds(1);
+
+  /**
+   * Assets larger than this are streamed from their source on every request instead of being
+   * cached.  Limits for particular media types (e.g. {@code video/mp4} or {@code video/*}) take
+   * precedence.  If null assets of any size are cached.
+   */
+  @JsonProperty
+  private Size maxCachedAssetSize = null;
+
+  @NotNull
+  @JsonProperty
+  private Map<String, Size> maxCachedAssetSizeByType = Maps.newHashMap();
+
+  /**
+   * Compress assets with gzip as they are cached and serve the compressed variant to clients that
+   * accept it.
+   */
+  @JsonProperty
+  private boolean gzip = false;
+
+  /**
+   * The response buffer is grown up to this size so that an asset is written in one go.
+   */
+  @NotNull
+  @JsonProperty
+  private Size maxResponseBufferSize = Size.kilobytes(256);
+
+  /**
+   * Responses at least this large are written asynchronously, so that slow clients do not hold a
+   * container thread while they download large assets.  If null every response is written
+   * synchronously.
+   */
+  @JsonProperty
+  private Size asyncWriteThreshold = null;
+
+  /**
+   * How long an asynchronous response may take to write before its connection is closed.
+   */
+  @NotNull
+  @JsonProperty
+  private Duration asyncWriteTimeout = Duration.minutes(10);
+
+  /**
+   * Range requests for more than this many ranges, after overlapping and nearby ranges have been
+   * merged, are answered with the whole asset.
+   */
+  @Min(1)
+  @JsonProperty
+  private int maxRanges = RangePolicy.DEFAULT_MAX_RANGES;
+
+  /**
+   * Requested ranges separated by no more than this are merged into one.
+   */
+  @NotNull
+  @JsonProperty
+  private Size rangeCoalesceGap = Size.bytes(RangePolicy.DEFAULT_COALESCE_GAP);
+
+  /**
+   * Load the assets beneath the mappings into the cache in the background, using
+   * {@code warmUpThreads} threads, as the application starts accepting requests.
+   */
+  @JsonProperty
+  private boolean warmUp = false;
+
+  @Min(1)
+  @JsonProperty
+  private int warmUpThreads = Runtime.getRuntime().availableProcessors();
+
   @NotNull
   @JsonProperty
   private Map<String, String> mimeTypes = Maps.newHashMap();
 
+  /**
+   * The body of 404 responses for paths that no asset answers, written without going through the
+   * container's error handling.  When null, misses get the container's error page.
+   */
+  @JsonProperty
+  private String notFoundPage = null;
+
+  /**
+   * 404 bodies for misses beneath particular URI paths, by path; these take precedence over
+   * {@code notFoundPage}.
+   */
+  @NotNull
+  @JsonProperty
+  private Map<String, String> notFoundPages = Maps.newHashMap();
+
+  /**
+   * The Content-Type of {@code notFoundPage} and {@code notFoundPages}.
+   */
+  @NotNull
+  @JsonProperty
+  private String notFoundContentType = "text/html";
+
+  /**
+   * The Cache-Control headers to send with assets, by path.  The first policy that matches an
+   * asset applies to it; assets that match no policy are sent without Cache-Control.
+   */
+  @NotNull
+  @JsonProperty
+  private List<CacheControlPolicy> cacheControl = Lists.newArrayList();
+
+  /**
+   * The most Link preload hints to send with index documents beneath each URI path, by path.
+   * Index documents beneath paths that are not listed are sent without hints.
+   */
+  @NotNull
+  @JsonProperty
+  private Map<String, Integer> preloadHints = Maps.newHashMap();
+
+  /**
+   * Whether to also serve assets at fingerprinted paths, such as /assets/app.3f9a1c0b7d2e.js, that
+   * are cached for a year.
+   */
+  @JsonProperty
+  private boolean fingerprint = false;
+
+  /**
+   * The path to serve a JSON manifest of fingerprinted paths at, or null to serve none.
+   */
+  @JsonProperty
+  private String manifestPath = null;
+
   private Map<String, String> resourcePathToUriMappings;
   /**
    * A series of mappings from resource paths (in the classpath)
@@ -68,6 +246,83 @@ public class AssetsConfiguration {
     return cacheSpec;
   }
 
+  /**
+   * The caching specification for how to memoize requests for missing assets.
+   *
+   * @return The missingAssetCacheSpec.
+   */
+  public String getMissingAssetCacheSpec() {
+    return missingAssetCacheSpec;
+  }
+
+  public AssetCacheEngine getCacheEngine() {
+    return cacheEngine;
+  }
+
+  public AssetStorage getStorage() {
+    return storage;
+  }
+
+  public Size getOffHeapBudget() {
+    return offHeapBudget;
+  }
+
+  public boolean isMapOverrides() {
+    return mapOverrides;
+  }
+
+  public boolean isTransferOverrides() {
+    return transferOverrides;
+  }
+
+  public OverrideWatchMode getOverrideWatchMode() {
+    return overrideWatchMode;
+  }
+
+  public Duration getOverridePollInterval() {
+    return overridePollInterval;
+  }
+
+  public Size getMaxCachedAssetSize() {
+    return maxCachedAssetSize;
+  }
+
+  public Map<String, Size> getMaxCachedAssetSizeByType() {
+    return Collections.unmodifiableMap(maxCachedAssetSizeByType);
+  }
+
+  public boolean isGzip() {
+    return gzip;
+  }
+
+  public Size getMaxResponseBufferSize() {
+    return maxResponseBufferSize;
+  }
+
+  public Size getAsyncWriteThreshold() {
+    return asyncWriteThreshold;
+  }
+
+  public Duration getAsyncWriteTimeout() {
+    return asyncWriteTimeout;
+  }
+
+  public int getMaxRanges() {
+    return maxRanges;
+  }
+
+  public Size getRangeCoalesceGap() {
+    return rangeCoalesceGap;
+  }
+
+  public boolean isWarmUp() {
+    return warmUp;
+  }
+
+  public int getWarmUpThreads() {
+    return warmUpThreads;
+  }
+
   public Map<String, String> getOverrides() {
     return Collections.unmodifiableMap(overrides);
   }
@@ -75,4 +330,32 @@ public class AssetsConfiguration {
   public Map<String, String> getMimeTypes() {
     return Collections.unmodifiableMap(mimeTypes);
   }
+
+  public String getNotFoundPage() {
+    return notFoundPage;
+  }
+
+  public Map<String, String> getNotFoundPages() {
+    return Collections.unmodifiableMap(notFoundPages);
+  }
+
+  public String getNotFoundContentType() {
+    return notFoundContentType;
+  }
+
+  public List<CacheControlPolicy> getCacheControl() {
+    return Collections.unmodifiableList(cacheControl);
+  }
+
+  public Map<String, Integer> getPreloadHints() {
+    return Collections.unmodifiableMap(preloadHints);
+  }
+
+  public boolean isFingerprint() {
+    return fingerprint;
+  }
+
+  public String getManifestPath() {
+    return manifestPath;
+  }
 }
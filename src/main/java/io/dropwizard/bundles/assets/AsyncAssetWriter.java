@@ -0,0 +1,116 @@
+package io.dropwizard.bundles.assets;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Writes a response body without holding a container thread while the client is slow to read it.
+ * The request is put into asynchronous mode and the body is written a chunk at a time whenever the
+ * container reports that the socket is writable.
+ *
+ * <p>The writer owns a reference to the asset's body, which it releases once the response has been
+ * written, has failed, or has run out of time.</p>
+ */
+class AsyncAssetWriter implements WriteListener, AsyncListener {
+  private static final int CHUNK_SIZE = 64 * 1024;
+
+  private final AsyncContext context;
+  private final ServletOutputStream output;
+  private final Iterator<ByteBuffer> buffers;
+  private final AssetBody body;
+  private final AtomicBoolean released = new AtomicBoolean(false);
+  private ByteBuffer current;
+  private byte[] chunk;
+
+  private AsyncAssetWriter(AsyncContext context, ServletOutputStream output,
+                           List<ByteBuffer> buffers, AssetBody body) {
+    this.context = context;
+    this.output = output;
+    this.buffers = buffers.iterator();
+    this.body = body;
+  }
+
+  /**
+   * Starts writing the given buffers, which are slices of the retained body, once the current
+   * dispatch returns.
+   *
+   * @param timeoutMillis how long the whole response may take to write, or 0 for no limit
+   */
+  static void start(HttpServletRequest req, ServletOutputStream output, List<ByteBuffer> buffers,
+                    AssetBody body, long timeoutMillis) {
+    AsyncContext context = req.startAsync();
+    context.setTimeout(timeoutMillis);
+    AsyncAssetWriter writer = new AsyncAssetWriter(context, output, buffers, body);
+    context.addListener(writer);
+    output.setWriteListener(writer);
+  }
+
+  @Override
+  public void onWritePossible() throws IOException {
+    while (output.isReady()) {
+      if (current == null || !current.hasRemaining()) {
+        if (!buffers.hasNext()) {
+          release();
+          context.complete();
+          return;
+        }
+        current = buffers.next();
+        continue;
+      }
+
+      int count = Math.min(current.remaining(), CHUNK_SIZE);
+      if (current.hasArray()) {
+        output.write(current.array(), current.arrayOffset() + current.position(), count);
+        current.position(current.position() + count);
+      } else {
+        // The chunk is only reused once the container has finished writing it.
+        if (chunk == null) {
+          chunk = new byte[CHUNK_SIZE];
+        }
+        current.get(chunk, 0, count);
+        output.write(chunk, 0, count);
+      }
+    }
+  }
+
+  @Override
+  public void onError(Throwable t) {
+    // The container completes the request after reporting the error.
+    release();
+  }
+
+  @Override
+  public void onTimeout(AsyncEvent event) throws IOException {
+    release();
+    context.complete();
+  }
+
+  @Override
+  public void onError(AsyncEvent event) throws IOException {
+    release();
+  }
+
+  @Override
+  public void onComplete(AsyncEvent event) throws IOException {
+    release();
+  }
+
+  @Override
+  public void onStartAsync(AsyncEvent event) throws IOException {
+  }
+
+  private void release() {
+    if (released.compareAndSet(false, true)) {
+      body.release();
+    }
+  }
+}
@@ -0,0 +1,65 @@
+package io.dropwizard.bundles.assets;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The caching headers for an asset, computed once from the {@link CacheControlPolicy} that matches
+ * it when the asset is loaded.
+ */
+class CacheControl {
+  static final CacheControl NONE = new CacheControl(null, -1);
+
+  /**
+   * The headers for an asset requested by its fingerprinted path, which only ever serves one
+   * version of the asset: cache it for a year, the longest HTTP/1.1 caches are asked to.
+   */
+  static final CacheControl FINGERPRINTED = new CacheControl(
+      "public, max-age=" + TimeUnit.DAYS.toSeconds(365) + ", immutable",
+      TimeUnit.DAYS.toMillis(365));
+
+  private final String header;
+  private final long expiresAfterMillis;
+
+  private CacheControl(String header, long expiresAfterMillis) {
+    this.header = header;
+    this.expiresAfterMillis = expiresAfterMillis;
+  }
+
+  static CacheControl of(CacheControlPolicy policy) {
+    List<String> directives = Lists.newArrayList();
+    if (policy.isNoCache()) {
+      directives.add("no-cache");
+    }
+    if (policy.getMaxAge() != null) {
+      directives.add("max-age=" + policy.getMaxAge().toSeconds());
+    }
+    if (policy.getStaleWhileRevalidate() != null) {
+      directives.add("stale-while-revalidate=" + policy.getStaleWhileRevalidate().toSeconds());
+    }
+    if (policy.isImmutable()) {
+      directives.add("immutable");
+    }
+
+    long expiresAfterMillis = policy.isExpires() && policy.getMaxAge() != null
+        ? policy.getMaxAge().toMilliseconds() : -1;
+    return new CacheControl(directives.isEmpty() ? null : Joiner.on(", ").join(directives),
+        expiresAfterMillis);
+  }
+
+  /**
+   * The value of the Cache-Control header, or null to send none.
+   */
+  String getHeader() {
+    return header;
+  }
+
+  /**
+   * How long after the response the Expires header should be, or -1 to send none.
+   */
+  long getExpiresAfterMillis() {
+    return expiresAfterMillis;
+  }
+}
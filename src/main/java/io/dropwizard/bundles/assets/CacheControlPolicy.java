@@ -0,0 +1,89 @@
+package io.dropwizard.bundles.assets;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.util.Duration;
+
+/**
+ * A row of the {@code cacheControl} table in {@link AssetsConfiguration}: the Cache-Control
+ * directives to send with the assets whose paths match.  Policies are tried in order and the first
+ * that matches an asset applies to it.
+ *
+ * <p>An asset matches if its request path lies beneath {@code mapping} (any path if it is not set)
+ * and the rest of the path matches {@code glob} or {@code regex}.  Globs support {@code *} and
+ * {@code ?} within a path segment, {@code **} across segments and {@code {a,b}} alternatives.  A
+ * policy with neither matches every asset beneath its mapping.</p>
+ */
+public class CacheControlPolicy {
+  @JsonProperty
+  private String mapping = null;
+
+  @JsonProperty
+  private String glob = null;
+
+  @JsonProperty
+  private String regex = null;
+
+  /**
+   * How long caches may serve the asset without revalidating it.
+   */
+  @JsonProperty
+  private Duration maxAge = null;
+
+  /**
+   * Whether the asset never changes while it is fresh, so clients need not revalidate it even when
+   * the user reloads the page.  Use this for fingerprinted assets.
+   */
+  @JsonProperty
+  private boolean immutable = false;
+
+  /**
+   * How long after it becomes stale caches may keep serving the asset while they revalidate it in
+   * the background.
+   */
+  @JsonProperty
+  private Duration staleWhileRevalidate = null;
+
+  /**
+   * Whether caches must revalidate the asset before every use.
+   */
+  @JsonProperty
+  private boolean noCache = false;
+
+  /**
+   * Whether to also send an Expires header {@code maxAge} from now, for HTTP/1.0 caches.
+   */
+  @JsonProperty
+  private boolean expires = false;
+
+  public String getMapping() {
+    return mapping;
+  }
+
+  public String getGlob() {
+    return glob;
+  }
+
+  public String getRegex() {
+    return regex;
+  }
+
+  public Duration getMaxAge() {
+    return maxAge;
+  }
+
+  public boolean isImmutable() {
+    return immutable;
+  }
+
+  public Duration getStaleWhileRevalidate() {
+    return staleWhileRevalidate;
+  }
+
+  public boolean isNoCache() {
+    return noCache;
+  }
+
+  public boolean isExpires() {
+    return expires;
+  }
+}
@@ -0,0 +1,118 @@
+package io.dropwizard.bundles.assets;
+
+import com.google.common.collect.ImmutableList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * The {@code cacheControl} policies of an {@link AssetsConfiguration}, compiled for matching
+ * against asset keys.
+ */
+class CacheControlTable {
+  static final CacheControlTable EMPTY = new CacheControlTable(ImmutableList.<Rule>of());
+
+  private final List<Rule> rules;
+
+  private CacheControlTable(List<Rule> rules) {
+    this.rules = rules;
+  }
+
+  /**
+   * Compiles the policies, in order.
+   *
+   * @throws IllegalArgumentException if a policy has both a glob and a regex, or an invalid one
+   */
+  static CacheControlTable compile(List<CacheControlPolicy> policies) {
+    ImmutableList.Builder<Rule> rules = ImmutableList.builder();
+    for (CacheControlPolicy policy : policies) {
+      if (policy.getGlob() != null && policy.getRegex() != null) {
+        throw new IllegalArgumentException("Cache control policy for " + policy.getMapping()
+            + " has both a glob and a regex");
+      }
+
+      String mapping = policy.getMapping();
+      if (mapping != null && !mapping.endsWith("/")) {
+        mapping += '/';
+      }
+
+      Pattern pattern = null;
+      if (policy.getGlob() != null) {
+        pattern = Pattern.compile(globToRegex(policy.getGlob()));
+      } else if (policy.getRegex() != null) {
+        pattern = Pattern.compile(policy.getRegex());
+      }
+      rules.add(new Rule(mapping, pattern, CacheControl.of(policy)));
+    }
+    return new CacheControlTable(rules.build());
+  }
+
+  /**
+   * The caching headers for the asset with the given key: those of the first matching policy.
+   */
+  CacheControl lookup(String key) {
+    for (Rule rule : rules) {
+      if (rule.matches(key)) {
+        return rule.cacheControl;
+      }
+    }
+    return CacheControl.NONE;
+  }
+
+  static String globToRegex(String glob) {
+    StringBuilder regex = new StringBuilder();
+    int alternatives = 0;
+    for (int i = 0; i < glob.length(); i++) {
+      char c = glob.charAt(i);
+      if (c == '*' && glob.startsWith("**/", i)) {
+        regex.append("(?:.*/)?");
+        i += 2;
+      } else if (c == '*' && glob.startsWith("**", i)) {
+        regex.append(".*");
+        i++;
+      } else if (c == '*') {
+        regex.append("[^/]*");
+      } else if (c == '?') {
+        regex.append("[^/]");
+      } else if (c == '{') {
+        regex.append("(?:");
+        alternatives++;
+      } else if (c == '}' && alternatives > 0) {
+        regex.append(')');
+        alternatives--;
+      } else if (c == ',' && alternatives > 0) {
+        regex.append('|');
+      } else if ("\\.[]{}()+-^$|".indexOf(c) >= 0) {
+        regex.append('\\').append(c);
+      } else {
+        regex.append(c);
+      }
+    }
+    if (alternatives > 0) {
+      throw new IllegalArgumentException("Unclosed alternatives in glob " + glob);
+    }
+    return regex.toString();
+  }
+
+  private static class Rule {
+    private final String mapping;
+    private final Pattern pattern;
+    private final CacheControl cacheControl;
+
+    private Rule(String mapping, Pattern pattern, CacheControl cacheControl) {
+      this.mapping = mapping;
+      this.pattern = pattern;
+      this.cacheControl = cacheControl;
+    }
+
+    private boolean matches(String key) {
+      String path = key;
+      if (mapping != null) {
+        if (!key.startsWith(mapping)) {
+          return false;
+        }
+        path = key.substring(mapping.length());
+      }
+      return pattern == null || pattern.matcher(path).matches();
+    }
+  }
+}
@@ -0,0 +1,144 @@
+package io.dropwizard.bundles.assets;
+
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.RemovalListener;
+import com.github.benmanes.caffeine.cache.Weigher;
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.cache.CacheBuilderSpec;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An asset cache backed by Caffeine.  Its W-TinyLFU admission policy keeps frequently requested
+ * assets cached when a scan of one-off requests would evict them from an LRU cache, and it avoids
+ * the segment locks of Guava's cache.  Caffeine requires Java 8 and is an optional dependency, so
+ * it must be added to the application's classpath to use this engine.
+ *
+ * <p>Assets are loaded synchronously on the requesting thread, as with Guava, and removals are
+ * reported on the thread that caused them, so that memory is released and the servlet told
+ * before that request carries on.</p>
+ */
+class CaffeineAssetCache implements AssetCache {
+  // The options of a Guava cache spec that Caffeine's specification syntax has as well
+  private static final Set<String> CAFFEINE_OPTIONS = ImmutableSet.of("initialCapacity",
+      "maximumSize", "maximumWeight", "weakKeys", "weakValues", "softValues", "expireAfterAccess",
+      "expireAfterWrite", "refreshAfterWrite", "recordStats");
+
+  private final LoadingCache<String, Asset> cache;
+  private final boolean weighted;
+
+  CaffeineAssetCache(CacheBuilderSpec spec, final AssetCache.Loader loader,
+                     AssetCache.Listener listener) {
+    Caffeine<String, Asset> builder = Caffeine.from(caffeineSpec(spec))
+        .executor(MoreExecutors.directExecutor())
+        .removalListener(new AssetRemovalListener(listener));
+    this.weighted = AssetCacheEngine.isWeighted(spec);
+    if (weighted) {
+      builder = builder.weigher(new AssetSizeWeigher());
+    }
+
+    this.cache = builder.build(new CacheLoader<String, Asset>() {
+      @Override
+      public Asset load(String key) throws Exception {
+        return loader.load(key);
+      }
+    });
+  }
+
+  /**
+   * Translates a Guava cache spec into Caffeine's specification syntax, which is the same apart
+   * from concurrencyLevel.  That is dropped, as Caffeine has no segments to size.
+   *
+   * @throws IllegalArgumentException if the spec has an option Caffeine does not support
+   */
+  static String caffeineSpec(CacheBuilderSpec spec) {
+    List<String> options = Lists.newArrayList();
+    for (String option : Splitter.on(',').trimResults().omitEmptyStrings()
+        .split(spec.toParsableString())) {
+      String name = Splitter.on('=').trimResults().split(option).iterator().next();
+      if (name.equals("concurrencyLevel")) {
+        continue;
+      }
+      if (!CAFFEINE_OPTIONS.contains(name)) {
+        throw new IllegalArgumentException("The Caffeine cache engine does not support the "
+            + "cache spec option " + name + " in " + spec.toParsableString());
+      }
+      options.add(option);
+    }
+    return Joiner.on(',').join(options);
+  }
+
+  @Override
+  public Asset get(String key) {
+    return cache.get(key);
+  }
+
+  @Override
+  public Asset getIfPresent(String key) {
+    return cache.getIfPresent(key);
+  }
+
+  @Override
+  public void invalidate(String key) {
+    cache.invalidate(key);
+  }
+
+  @Override
+  public void invalidateAll() {
+    cache.invalidateAll();
+  }
+
+  @Override
+  public void reweigh(String key, Asset asset) {
+    if (!weighted) {
+      return;
+    }
+    // Caffeine does not report a value replaced by itself as removed.
+    cache.asMap().replace(key, asset, asset);
+  }
+
+  @Override
+  public long size() {
+    return cache.estimatedSize();
+  }
+
+  @Override
+  public Iterable<Asset> assets() {
+    return cache.asMap().values();
+  }
+
+  /**
+   * Weigh an asset according to the number of bytes it holds in memory.
+   */
+  private static final class AssetSizeWeigher implements Weigher<String, Asset> {
+    @Override
+    public int weigh(String key, Asset asset) {
+      return asset.weight();
+    }
+  }
+
+  /**
+   * Pass assets leaving the cache on to the asset cache's listener.
+   */
+  private static final class AssetRemovalListener implements RemovalListener<String, Asset> {
+    private final AssetCache.Listener listener;
+
+    private AssetRemovalListener(AssetCache.Listener listener) {
+      this.listener = listener;
+    }
+
+    @Override
+    public void onRemoval(String key, Asset asset, RemovalCause cause) {
+      if (asset != null) {
+        listener.onRemoval(key, asset, cause.wasEvicted());
+      }
+    }
+  }
+}
@@ -0,0 +1,148 @@
+package io.dropwizard.bundles.assets;
+
+import com.google.common.net.HttpHeaders;
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Evaluates the conditional headers of a request against the validators of the asset it is for,
+ * in the order of precedence RFC 7232 gives them.  Entity tags may be lists, weak, or {@code *};
+ * dates are compared to the second, as that is all an HTTP date holds, and malformed dates are
+ * ignored as if the header had not been sent.
+ */
+final class ConditionalRequests {
+  /**
+   * What a request's preconditions say should be done with it.
+   */
+  enum Outcome {
+    SERVE, NOT_MODIFIED, PRECONDITION_FAILED
+  }
+
+  private static final String WEAK_PREFIX = "W/";
+
+  private ConditionalRequests() {
+  }
+
+  /**
+   * Evaluates If-Match, If-Unmodified-Since, If-None-Match and If-Modified-Since, for a GET or
+   * HEAD request.
+   *
+   * @param etag             the ETag of the representation that would be served
+   * @param lastModifiedTime its modification time in milliseconds
+   */
+  static Outcome evaluate(HttpServletRequest req, String etag, long lastModifiedTime) {
+    String ifMatch = req.getHeader(HttpHeaders.IF_MATCH);
+    if (ifMatch != null) {
+      if (!matches(ifMatch, etag, false)) {
+        return Outcome.PRECONDITION_FAILED;
+      }
+    } else {
+      long ifUnmodifiedSince = dateHeader(req, HttpHeaders.IF_UNMODIFIED_SINCE);
+      if (ifUnmodifiedSince >= 0 && seconds(lastModifiedTime) > seconds(ifUnmodifiedSince)) {
+        return Outcome.PRECONDITION_FAILED;
+      }
+    }
+
+    String ifNoneMatch = req.getHeader(HttpHeaders.IF_NONE_MATCH);
+    if (ifNoneMatch != null) {
+      // If-Modified-Since is ignored whenever If-None-Match is sent.
+      return matches(ifNoneMatch, etag, true) ? Outcome.NOT_MODIFIED : Outcome.SERVE;
+    }
+
+    long ifModifiedSince = dateHeader(req, HttpHeaders.IF_MODIFIED_SINCE);
+    if (ifModifiedSince >= 0 && seconds(lastModifiedTime) <= seconds(ifModifiedSince)) {
+      return Outcome.NOT_MODIFIED;
+    }
+    return Outcome.SERVE;
+  }
+
+  /**
+   * Whether the request's Range header still applies, given its If-Range header.  An entity tag
+   * must match strongly and a date must be the representation's modification time exactly;
+   * otherwise the whole representation is sent.
+   */
+  static boolean isRangeCurrent(HttpServletRequest req, String etag, long lastModifiedTime) {
+    String ifRange = req.getHeader(HttpHeaders.IF_RANGE);
+    if (ifRange == null) {
+      return true;
+    }
+
+    ifRange = ifRange.trim();
+    if (ifRange.startsWith("\"") || ifRange.startsWith(WEAK_PREFIX)) {
+      return !etag.startsWith(WEAK_PREFIX) && ifRange.equals(etag);
+    }
+    long date = dateHeader(req, HttpHeaders.IF_RANGE);
+    return date >= 0 && seconds(date) == seconds(lastModifiedTime);
+  }
+
+  /**
+   * Whether a list of entity tags, or {@code *}, matches the given ETag.  Malformed elements of
+   * the list never match.
+   *
+   * @param weak whether to use the weak comparison, under which {@code W/"x"} matches
+   *             {@code "x"}; the strong comparison never matches a weak tag
+   */
+  static boolean matches(String header, String etag, boolean weak) {
+    if (header.trim().equals("*")) {
+      return true;
+    }
+
+    boolean etagWeak = etag.startsWith(WEAK_PREFIX);
+    if (etagWeak && !weak) {
+      return false;
+    }
+    String opaqueTag = etagWeak ? etag.substring(WEAK_PREFIX.length()) : etag;
+
+    int length = header.length();
+    int i = 0;
+    while (i < length) {
+      char c = header.charAt(i);
+      if (c == ',' || c == ' ' || c == '\t') {
+        i++;
+        continue;
+      }
+
+      boolean tagWeak = header.startsWith(WEAK_PREFIX, i);
+      int open = tagWeak ? i + WEAK_PREFIX.length() : i;
+      int close = open < length && header.charAt(open) == '"' ? header.indexOf('"', open + 1) : -1;
+      int end = close < 0 ? length : skipWhitespace(header, close + 1);
+      if (close < 0 || (end < length && header.charAt(end) != ',')) {
+        // Not an entity tag; skip to the next element.
+        int comma = header.indexOf(',', i);
+        if (comma < 0) {
+          return false;
+        }
+        i = comma + 1;
+        continue;
+      }
+
+      if ((weak || !tagWeak) && close + 1 - open == opaqueTag.length()
+          && header.regionMatches(open, opaqueTag, 0, opaqueTag.length())) {
+        return true;
+      }
+      i = end;
+    }
+    return false;
+  }
+
+  private static int skipWhitespace(String header, int i) {
+    while (i < header.length() && (header.charAt(i) == ' ' || header.charAt(i) == '\t')) {
+      i++;
+    }
+    return i;
+  }
+
+  /**
+   * A date header in milliseconds, or -1 if it is missing or malformed.
+   */
+  private static long dateHeader(HttpServletRequest req, String name) {
+    try {
+      return req.getDateHeader(name);
+    } catch (IllegalArgumentException e) {
+      return -1;
+    }
+  }
+
+  private static long seconds(long millis) {
+    return millis / 1000;
+  }
+}
@@ -1,19 +1,25 @@
 package io.dropwizard.bundles.assets;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.base.Charsets;
 import com.google.common.cache.CacheBuilderSpec;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
+import com.google.common.primitives.Ints;
 import io.dropwizard.ConfiguredBundle;
 import io.dropwizard.setup.Bootstrap;
 import io.dropwizard.setup.Environment;
+import io.dropwizard.util.Size;
 
 import java.util.Map;
 
+import javax.servlet.ServletRegistration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
 
 /**
  * An assets bundle (like io.dropwizard.assets.AssetsBundle) that utilizes configuration to provide
@@ -29,6 +35,8 @@ public class ConfiguredAssetsBundle implements ConfiguredBundle<AssetsBundleConf
   private static final String DEFAULT_PATH = "/assets";
   public static final CacheBuilderSpec DEFAULT_CACHE_SPEC =
       CacheBuilderSpec.parse("maximumSize=100");
+  public static final CacheBuilderSpec DEFAULT_MISSING_ASSET_CACHE_SPEC =
+      CacheBuilderSpec.parse("maximumSize=1000,expireAfterWrite=10s");
   private static final String DEFAULT_INDEX_FILE = "index.htm";
   private static final String DEFAULT_SERVLET_MAPPING_NAME = "assets";
 
@@ -36,6 +44,7 @@ public class ConfiguredAssetsBundle implements ConfiguredBundle<AssetsBundleConf
   private final CacheBuilderSpec cacheBuilderSpec;
   private final String indexFile;
   private final String assetsName;
+  private volatile AssetUrlResolver urlResolver;
 
   /**
    * Creates a new {@link ConfiguredAssetsBundle} which serves up static assets from
@@ -299,6 +308,16 @@ public class ConfiguredAssetsBundle implements ConfiguredBundle<AssetsBundleConf
   }
 
 
+  /**
+   * The resolver for the fingerprinted paths of this bundle's assets.
+   *
+   * @throws IllegalStateException if the bundle has not been run yet
+   */
+  public AssetUrlResolver getUrlResolver() {
+    checkState(urlResolver != null, "The %s assets bundle has not been run", assetsName);
+    return urlResolver;
+  }
+
   @Override
   public void initialize(Bootstrap<?> bootstrap) {
     // nothing to do
@@ -325,6 +344,49 @@ public class ConfiguredAssetsBundle implements ConfiguredBundle<AssetsBundleConf
     }
     AssetServlet servlet = new AssetServlet(servletResourcePathToUriMappings, indexFile,
         Charsets.UTF_8, spec, overrides, mimeTypes);
+    if (config.getMissingAssetCacheSpec() != null) {
+      servlet.setMissingAssetCacheSpec(CacheBuilderSpec.parse(config.getMissingAssetCacheSpec()));
+    }
+    servlet.setNotFoundPages(config.getNotFoundContentType(), config.getNotFoundPage(),
+        config.getNotFoundPages());
+    servlet.setCacheEngine(config.getCacheEngine());
+    servlet.registerMetrics(env.metrics(), MetricRegistry.name(AssetServlet.class, assetsName));
+    servlet.setStorage(config.getStorage(), config.getOffHeapBudget().toBytes());
+    servlet.setMapOverrides(config.isMapOverrides());
+    servlet.setTransferOverrides(config.isTransferOverrides());
+
+    Map<String, Long> maxCachedAssetSizeByType = Maps.newHashMap();
+    for (Map.Entry<String, Size> limit : config.getMaxCachedAssetSizeByType().entrySet()) {
+      maxCachedAssetSizeByType.put(limit.getKey(), limit.getValue().toBytes());
+    }
+    servlet.setMaxCachedAssetSize(config.getMaxCachedAssetSize() != null
+        ? config.getMaxCachedAssetSize().toBytes() : Long.MAX_VALUE, maxCachedAssetSizeByType);
+    servlet.setGzip(config.isGzip());
+    servlet.setCacheControlPolicies(config.getCacheControl());
+    servlet.setPreloadHints(config.getPreloadHints());
+    servlet.setMaxResponseBufferSize(Ints.checkedCast(config.getMaxResponseBufferSize().toBytes()));
+    boolean asyncWrites = config.getAsyncWriteThreshold() != null;
+    if (asyncWrites) {
+      servlet.setAsyncWrites(config.getAsyncWriteThreshold().toBytes(),
+          config.getAsyncWriteTimeout().toMilliseconds());
+    }
+    servlet.setRangePolicy(config.getMaxRanges(),
+        Ints.checkedCast(config.getRangeCoalesceGap().toBytes()));
+    servlet.setFingerprint(config.isFingerprint());
+    servlet.setManifestPath(config.getManifestPath());
+    urlResolver = new AssetUrlResolver(servlet);
+
+    if (config.getOverrideWatchMode() != OverrideWatchMode.REQUEST
+        && !config.getOverrides().isEmpty()) {
+      env.lifecycle().manage(new OverrideWatcher(servlet, config.getOverrideWatchMode(),
+          config.getOverridePollInterval().toMilliseconds()));
+    }
+
+    if (config.isWarmUp()) {
+      AssetWarmer warmer = new AssetWarmer(servlet, config.getWarmUpThreads());
+      env.lifecycle().manage(warmer);
+      env.healthChecks().register(assetsName + "-warmup", warmer.readinessCheck());
+    }
 
     for (Map.Entry<String, String> mapping : servletResourcePathToUriMappings) {
       String mappingPath = mapping.getValue();
@@ -335,7 +397,13 @@ public class ConfiguredAssetsBundle implements ConfiguredBundle<AssetsBundleConf
 
       LOGGER.info("Registering ConfiguredAssetBundle with name: {} for path {}", assetsName,
           mappingPath);
-      env.servlets().addServlet(assetsName, servlet).addMapping(mappingPath);
+      ServletRegistration.Dynamic registration = env.servlets().addServlet(assetsName, servlet);
+      registration.setAsyncSupported(asyncWrites);
+      registration.addMapping(mappingPath);
+    }
+
+    if (config.getManifestPath() != null) {
+      env.servlets().addServlet(assetsName, servlet).addMapping(config.getManifestPath());
     }
   }
 }
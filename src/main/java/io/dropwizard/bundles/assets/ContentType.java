@@ -0,0 +1,76 @@
+package io.dropwizard.bundles.assets;
+
+import com.google.common.net.MediaType;
+import java.nio.charset.Charset;
+
+/**
+ * The Content-Type of an asset, worked out once from its extension and the servlet's default
+ * charset when the asset is loaded rather than parsed again on every request.
+ */
+class ContentType {
+  static final ContentType DEFAULT = new ContentType(MediaType.HTML_UTF_8);
+
+  private final String mimeType;
+  private final String charset;
+  private final String header;
+  private final boolean ranged;
+
+  private ContentType(MediaType mediaType) {
+    this.mimeType = mediaType.type() + '/' + mediaType.subtype();
+    this.charset = mediaType.charset().isPresent() ? mediaType.charset().get().toString() : null;
+    this.header = mediaType.toString();
+    this.ranged = mediaType.is(MediaType.ANY_VIDEO_TYPE) || mediaType.is(MediaType.ANY_AUDIO_TYPE);
+  }
+
+  /**
+   * The Content-Type for a mime type, with the default charset added to text types.
+   *
+   * @param mimeType       the mime type, or null if it is not known
+   * @param defaultCharset the charset of text types, or null to leave them without one
+   * @return the content type, or {@link #DEFAULT} if the mime type is unknown or malformed
+   */
+  static ContentType of(String mimeType, Charset defaultCharset) {
+    if (mimeType == null) {
+      return DEFAULT;
+    }
+
+    try {
+      MediaType mediaType = MediaType.parse(mimeType);
+      if (defaultCharset != null && mediaType.is(MediaType.ANY_TEXT_TYPE)) {
+        mediaType = mediaType.withCharset(defaultCharset);
+      }
+      return new ContentType(mediaType);
+    } catch (IllegalArgumentException expected) {
+      return DEFAULT;
+    }
+  }
+
+  /**
+   * The type and subtype, without parameters.
+   */
+  String getMimeType() {
+    return mimeType;
+  }
+
+  /**
+   * The charset parameter, or null if there is none.
+   */
+  String getCharset() {
+    return charset;
+  }
+
+  /**
+   * The whole media type, parameters included, as sent with each part of a multipart response.
+   */
+  String getHeader() {
+    return header;
+  }
+
+  /**
+   * Whether clients should be told that ranges are accepted even when they have not asked for one,
+   * which is the case for audio and video.
+   */
+  boolean isRanged() {
+    return ranged;
+  }
+}
@@ -0,0 +1,69 @@
+package io.dropwizard.bundles.assets;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Puts content fingerprints into asset paths and takes them out again: {@code /assets/app.js} is
+ * served as {@code /assets/app.3f9a1c0b7d2e.js} for as long as its contents do not change.
+ */
+final class Fingerprints {
+  static final int LENGTH = 12;
+
+  // The fingerprint goes before the extension of the last path segment, or at its end.
+  private static final Pattern FINGERPRINTED =
+      Pattern.compile("(.*/[^/]+)\\.([0-9a-f]{" + LENGTH + "})(\\.[^./]+)?");
+
+  private Fingerprints() {
+  }
+
+  /**
+   * The fingerprint of the version of an asset with the given ETag: the start of its content
+   * hash, or a hash of the size and modification time that identify an asset whose contents are
+   * not hashed.
+   */
+  static String of(String etag) {
+    String tag = etag.substring(1, etag.length() - 1);
+    if (tag.length() < LENGTH || tag.indexOf('-') >= 0) {
+      tag = Hashing.murmur3_128().hashString(tag, Charsets.UTF_8).toString();
+    }
+    return tag.substring(0, LENGTH);
+  }
+
+  /**
+   * The path with the fingerprint added, or the path itself for a directory.
+   */
+  static String apply(String path, String fingerprint) {
+    int segment = path.lastIndexOf('/') + 1;
+    if (segment == path.length()) {
+      return path;
+    }
+
+    int extension = path.lastIndexOf('.');
+    if (extension <= segment) {
+      return path + '.' + fingerprint;
+    }
+    return path.substring(0, extension) + '.' + fingerprint + path.substring(extension);
+  }
+
+  /**
+   * Splits a path that may carry a fingerprint into the path without it and the fingerprint.
+   *
+   * @return the matched path, with the path at group 1 and 3 and the fingerprint at group 2, or
+   *         null if the path does not look fingerprinted
+   */
+  static Matcher match(String path) {
+    Matcher matcher = FINGERPRINTED.matcher(path);
+    return matcher.matches() ? matcher : null;
+  }
+
+  /**
+   * The path of a fingerprinted path's asset.
+   */
+  static String strip(Matcher matched) {
+    String extension = matched.group(3);
+    return extension == null ? matched.group(1) : matched.group(1) + extension;
+  }
+}
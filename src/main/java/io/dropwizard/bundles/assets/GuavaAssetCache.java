@@ -0,0 +1,119 @@
+package io.dropwizard.bundles.assets;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheBuilderSpec;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.Sets;
+import java.util.Set;
+
+/**
+ * An asset cache backed by Guava's {@link LoadingCache}.
+ */
+class GuavaAssetCache implements AssetCache {
+  private final LoadingCache<String, Asset> cache;
+  private final boolean weighted;
+  // Assets being replaced by themselves to be weighed again, which are not really removed
+  private final Set<Asset> reweighing = Sets.newConcurrentHashSet();
+
+  GuavaAssetCache(CacheBuilderSpec spec, final AssetCache.Loader loader,
+                  AssetCache.Listener listener) {
+    CacheBuilder<String, Asset> builder = CacheBuilder.from(spec)
+        .removalListener(new AssetRemovalListener(listener, reweighing));
+    this.weighted = AssetCacheEngine.isWeighted(spec);
+    if (weighted) {
+      builder = builder.weigher(new AssetSizeWeigher());
+    }
+
+    this.cache = builder.build(new CacheLoader<String, Asset>() {
+      @Override
+      public Asset load(String key) throws Exception {
+        return loader.load(key);
+      }
+    });
+  }
+
+  @Override
+  public Asset get(String key) {
+    try {
+      return cache.getUnchecked(key);
+    } catch (CacheLoader.InvalidCacheLoadException e) {
+      // The loader returned null.
+      return null;
+    }
+  }
+
+  @Override
+  public Asset getIfPresent(String key) {
+    return cache.getIfPresent(key);
+  }
+
+  @Override
+  public void invalidate(String key) {
+    cache.invalidate(key);
+  }
+
+  @Override
+  public void invalidateAll() {
+    cache.invalidateAll();
+  }
+
+  @Override
+  public void reweigh(String key, Asset asset) {
+    if (!weighted) {
+      return;
+    }
+    reweighing.add(asset);
+    if (!cache.asMap().replace(key, asset, asset)) {
+      reweighing.remove(asset);
+    }
+  }
+
+  @Override
+  public long size() {
+    return cache.size();
+  }
+
+  @Override
+  public Iterable<Asset> assets() {
+    return cache.asMap().values();
+  }
+
+  /**
+   * Weigh an asset according to the number of bytes it holds in memory.
+   */
+  private static final class AssetSizeWeigher implements Weigher<String, Asset> {
+    @Override
+    public int weigh(String key, Asset asset) {
+      return asset.weight();
+    }
+  }
+
+  /**
+   * Pass assets leaving the cache on to the asset cache's listener.
+   */
+  private static final class AssetRemovalListener implements RemovalListener<String, Asset> {
+    private final AssetCache.Listener listener;
+    private final Set<Asset> reweighing;
+
+    private AssetRemovalListener(AssetCache.Listener listener, Set<Asset> reweighing) {
+      this.listener = listener;
+      this.reweighing = reweighing;
+    }
+
+    @Override
+    public void onRemoval(RemovalNotification<String, Asset> notification) {
+      Asset asset = notification.getValue();
+      if (notification.getCause() == RemovalCause.REPLACED && reweighing.remove(asset)) {
+        return;
+      }
+      if (asset != null) {
+        listener.onRemoval(notification.getKey(), asset, notification.wasEvicted());
+      }
+    }
+  }
+}
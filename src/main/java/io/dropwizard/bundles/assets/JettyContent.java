@@ -0,0 +1,65 @@
+package io.dropwizard.bundles.assets;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import org.eclipse.jetty.server.HttpOutput;
+
+/**
+ * Hands response bodies straight to Jetty's {@link HttpOutput}, which sends a buffer to the socket
+ * without first copying it into its aggregation buffer; mapped and off-heap buffers are written
+ * by the kernel straight from their memory.  Other containers, and responses whose output stream
+ * has been wrapped by a filter, are left to the usual servlet output stream.
+ */
+final class JettyContent {
+  private static final boolean AVAILABLE = isAvailable();
+
+  private JettyContent() {
+  }
+
+  /**
+   * Sends the buffer as the whole of the response's body, blocking until it has been written.
+   * The buffer must not be modified meanwhile.  Jetty holds on to it no longer than this call, so
+   * a direct or mapped buffer may be freed as soon as it returns, which is when the counted bodies
+   * drop the reference the response holds.
+   *
+   * @return false if the output is not Jetty's, in which case nothing has been written
+   */
+  static boolean send(OutputStream output, ByteBuffer content) throws IOException {
+    return AVAILABLE && Jetty.send(output, content);
+  }
+
+  /**
+   * Whether {@link #send} would hand buffers written to the given output to Jetty.
+   */
+  static boolean accepts(OutputStream output) {
+    return AVAILABLE && Jetty.accepts(output);
+  }
+
+  private static boolean isAvailable() {
+    try {
+      Class.forName("org.eclipse.jetty.server.HttpOutput", false,
+          JettyContent.class.getClassLoader());
+      return true;
+    } catch (ClassNotFoundException | LinkageError e) {
+      return false;
+    }
+  }
+
+  /**
+   * Only loaded once Jetty is known to be on the classpath.
+   */
+  private static final class Jetty {
+    private static boolean accepts(OutputStream output) {
+      return output instanceof HttpOutput;
+    }
+
+    private static boolean send(OutputStream output, ByteBuffer content) throws IOException {
+      if (!accepts(output)) {
+        return false;
+      }
+      ((HttpOutput) output).sendContent(content);
+      return true;
+    }
+  }
+}
@@ -0,0 +1,90 @@
+package io.dropwizard.bundles.assets;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import io.dropwizard.servlets.assets.ByteRange;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.List;
+
+/**
+ * The body of a {@code multipart/byteranges} response: each requested range of an asset as a part
+ * with its own Content-Type and Content-Range headers.  The part headers are worked out up front,
+ * so the response's Content-Length is known before anything is written, and the ranges themselves
+ * are written straight from slices of the asset's body.
+ */
+class MultipartByteRanges {
+  // Assets are not scanned for the boundary; 64 random bits are not going to turn up in one.
+  private static final String BOUNDARY =
+      "ASSET_BOUNDARY_" + Long.toHexString(new SecureRandom().nextLong());
+  private static final String CONTENT_TYPE = "multipart/byteranges; boundary=" + BOUNDARY;
+  private static final byte[] END = ("\r\n--" + BOUNDARY + "--\r\n").getBytes(Charsets.US_ASCII);
+
+  private final List<ByteRange> ranges;
+  private final List<byte[]> partHeaders;
+  private final long contentLength;
+
+  /**
+   * @param ranges         the ranges to send, in the order they were requested
+   * @param resourceLength the length of the whole asset
+   * @param contentType    the media type of the asset, sent with every part
+   */
+  MultipartByteRanges(List<ByteRange> ranges, int resourceLength, String contentType) {
+    ImmutableList.Builder<byte[]> partHeaders = ImmutableList.builder();
+    long contentLength = END.length;
+    for (int i = 0; i < ranges.size(); i++) {
+      ByteRange range = ranges.get(i);
+      // The CRLF before each boundary after the first belongs to the boundary, not the part.
+      byte[] headers = ((i == 0 ? "" : "\r\n") + "--" + BOUNDARY + "\r\n"
+          + "Content-Type: " + contentType + "\r\n"
+          + "Content-Range: bytes " + range + '/' + resourceLength + "\r\n"
+          + "\r\n").getBytes(Charsets.US_ASCII);
+      partHeaders.add(headers);
+      contentLength += headers.length + range.getEnd() - range.getStart() + 1;
+    }
+
+    this.ranges = ranges;
+    this.partHeaders = partHeaders.build();
+    this.contentLength = contentLength;
+  }
+
+  /**
+   * The Content-Type of the response, naming the boundary between parts.
+   */
+  String getContentType() {
+    return CONTENT_TYPE;
+  }
+
+  long getContentLength() {
+    return contentLength;
+  }
+
+  /**
+   * Writes every part, taking the ranges from the given body.
+   */
+  void writeTo(OutputStream out, AssetBody body) throws IOException {
+    for (int i = 0; i < ranges.size(); i++) {
+      ByteRange range = ranges.get(i);
+      out.write(partHeaders.get(i));
+      body.writeTo(out, range.getStart(), range.getEnd() - range.getStart() + 1);
+    }
+    out.write(END);
+  }
+
+  /**
+   * Every part as a sequence of buffers, the ranges being slices of the given body.
+   */
+  List<ByteBuffer> buffers(AssetBody body) {
+    List<ByteBuffer> buffers = Lists.newArrayListWithCapacity(ranges.size() * 2 + 1);
+    for (int i = 0; i < ranges.size(); i++) {
+      ByteRange range = ranges.get(i);
+      buffers.add(ByteBuffer.wrap(partHeaders.get(i)));
+      buffers.add(body.slice(range.getStart(), range.getEnd() - range.getStart() + 1));
+    }
+    buffers.add(ByteBuffer.wrap(END));
+    return buffers;
+  }
+}
@@ -0,0 +1,94 @@
+package io.dropwizard.bundles.assets;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Ordering;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Map;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * The responses for requests that no asset answers.  Unless a page is configured, misses are left
+ * to the container's error handling, which builds a new error page for every one of them; a
+ * configured page is encoded once and written straight to the response.
+ */
+class NotFoundPages {
+  static final NotFoundPages CONTAINER =
+      new NotFoundPages(null, ImmutableMap.<String, Page>of());
+
+  private final Page defaultPage;
+  // In reverse order, so a mapping comes before any mapping that is a prefix of it
+  private final Map<String, Page> pagesByMapping;
+
+  private NotFoundPages(Page defaultPage, Map<String, Page> pagesByMapping) {
+    this.defaultPage = defaultPage;
+    this.pagesByMapping = pagesByMapping;
+  }
+
+  /**
+   * @param contentType   the Content-Type of every page; text types are sent in UTF-8 unless they
+   *                      name a charset of their own
+   * @param body          the page for misses beneath any mapping, or null to leave those to the
+   *                      container
+   * @param bodyByMapping pages for misses beneath particular URI paths, by path
+   */
+  static NotFoundPages of(String contentType, String body, Map<String, String> bodyByMapping) {
+    ContentType type = ContentType.of(contentType, Charsets.UTF_8);
+    Charset charset = type.getCharset() == null
+        ? Charsets.UTF_8 : Charset.forName(type.getCharset());
+
+    Map<String, Page> pages = Maps.newTreeMap(Ordering.<String>natural().reverse());
+    for (Map.Entry<String, String> page : bodyByMapping.entrySet()) {
+      String mapping = page.getKey().endsWith("/") ? page.getKey() : page.getKey() + '/';
+      pages.put(mapping, new Page(type, page.getValue().getBytes(charset)));
+    }
+    return new NotFoundPages(body == null ? null : new Page(type, body.getBytes(charset)),
+        ImmutableMap.copyOf(pages));
+  }
+
+  /**
+   * Answers a request for the given key, for which there is no asset, with a 404.
+   */
+  void send(HttpServletResponse resp, String key, boolean head) throws IOException {
+    Page page = lookup(key);
+    if (page == null) {
+      resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+
+    resp.setStatus(HttpServletResponse.SC_NOT_FOUND);
+    resp.setContentType(page.contentType.getMimeType());
+    if (page.contentType.getCharset() != null) {
+      resp.setCharacterEncoding(page.contentType.getCharset());
+    }
+    resp.setContentLength(page.body.length);
+    if (head) {
+      return;
+    }
+    try (ServletOutputStream output = resp.getOutputStream()) {
+      output.write(page.body);
+    }
+  }
+
+  private Page lookup(String key) {
+    for (Map.Entry<String, Page> page : pagesByMapping.entrySet()) {
+      if (key.startsWith(page.getKey()) || (key + '/').equals(page.getKey())) {
+        return page.getValue();
+      }
+    }
+    return defaultPage;
+  }
+
+  private static final class Page {
+    private final ContentType contentType;
+    private final byte[] body;
+
+    private Page(ContentType contentType, byte[] body) {
+      this.contentType = contentType;
+      this.body = body;
+    }
+  }
+}
@@ -0,0 +1,25 @@
+package io.dropwizard.bundles.assets;
+
+/**
+ * How changes to files in the override directories are noticed.
+ */
+public enum OverrideWatchMode {
+  /**
+   * Every request for a cached override file checks its modification time.
+   */
+  REQUEST,
+
+  /**
+   * The override directories are registered with the platform's file-system watch service, and
+   * only the cached assets for changed files are refreshed or evicted.  Falls back to
+   * {@link #POLL} where the watch service is unavailable.
+   */
+  WATCH,
+
+  /**
+   * The override directories are scanned in the background at a fixed interval, and only the
+   * cached assets for changed files are refreshed or evicted.  Use this for network file-systems,
+   * where the watch service does not see changes made by other hosts.
+   */
+  POLL
+}
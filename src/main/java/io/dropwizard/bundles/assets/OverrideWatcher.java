@@ -0,0 +1,271 @@
+package io.dropwizard.bundles.assets;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.dropwizard.lifecycle.Managed;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Watches the override directories of an {@link AssetServlet} and tells it which files were
+ * created, modified or deleted, so that requests never touch the file-system for an override that
+ * is already cached.  Changes are picked up from the platform's {@link WatchService} or, where that
+ * is unavailable or not wanted, by scanning the directories at a fixed interval.
+ */
+class OverrideWatcher implements Managed {
+  private static final Logger LOGGER = LoggerFactory.getLogger(OverrideWatcher.class);
+
+  private final AssetServlet servlet;
+  private final OverrideWatchMode mode;
+  private final long pollIntervalMillis;
+  private final List<Root> roots;
+
+  private final Map<WatchKey, Path> directories = Maps.newConcurrentMap();
+  private ScheduledExecutorService executor;
+  private WatchService watchService;
+  private Map<Path, Long> lastModifiedTimes;
+
+  OverrideWatcher(AssetServlet servlet, OverrideWatchMode mode, long pollIntervalMillis) {
+    this.servlet = servlet;
+    this.mode = mode;
+    this.pollIntervalMillis = pollIntervalMillis;
+
+    ImmutableList.Builder<Root> roots = ImmutableList.builder();
+    for (Map.Entry<String, String> override : servlet.getOverrides()) {
+      roots.add(new Root(override.getKey(), new File(override.getValue()).toPath()));
+    }
+    this.roots = roots.build();
+  }
+
+  @Override
+  public void start() throws Exception {
+    executor = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder().setNameFormat("assets-override-watcher-%d").setDaemon(true)
+            .build());
+
+    if (mode == OverrideWatchMode.WATCH) {
+      try {
+        watch();
+      } catch (IOException | UnsupportedOperationException e) {
+        LOGGER.warn("Unable to watch the override directories, polling them instead", e);
+        closeWatchService();
+        poll();
+      }
+    } else {
+      poll();
+    }
+
+    servlet.setOverridesWatched(true);
+  }
+
+  @Override
+  public void stop() throws Exception {
+    servlet.setOverridesWatched(false);
+    closeWatchService();
+    executor.shutdownNow();
+  }
+
+  private void watch() throws IOException {
+    watchService = FileSystems.getDefault().newWatchService();
+    for (Root root : roots) {
+      if (Files.isDirectory(root.path)) {
+        registerTree(root.path);
+      } else if (root.path.getParent() != null && Files.isDirectory(root.path.getParent())) {
+        register(root.path.getParent());
+      }
+    }
+
+    final WatchService service = watchService;
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          while (true) {
+            processEvents(service.take());
+          }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+          // The watcher was stopped.
+        }
+      }
+    });
+  }
+
+  private void register(Path directory) throws IOException {
+    directories.put(directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+        StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY), directory);
+  }
+
+  private void registerTree(Path directory) throws IOException {
+    Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
+          throws IOException {
+        register(dir);
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+
+  private void processEvents(WatchKey key) {
+    Path directory = directories.get(key);
+    for (WatchEvent<?> event : key.pollEvents()) {
+      if (event.kind() == StandardWatchEventKinds.OVERFLOW || directory == null) {
+        // Events were lost, so any cached override may be stale.
+        servlet.overridesChanged();
+        continue;
+      }
+
+      Path path = directory.resolve((Path) event.context());
+      if (event.kind() == StandardWatchEventKinds.ENTRY_MODIFY) {
+        changed(path, true);
+      } else if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+        if (directories.containsValue(path)) {
+          // Events are not reported for the files in a deleted directory.
+          servlet.overridesChanged();
+        } else {
+          changed(path, false);
+        }
+      } else if (Files.isDirectory(path)) {
+        // A directory moved into place arrives with its files already in it.
+        try {
+          registerTree(path);
+          for (Path file : listFiles(path).keySet()) {
+            changed(file, false);
+          }
+        } catch (IOException e) {
+          LOGGER.warn("Unable to watch override directory {}", path, e);
+          servlet.overridesChanged();
+        }
+      } else {
+        changed(path, false);
+      }
+    }
+
+    if (!key.reset()) {
+      directories.remove(key);
+    }
+  }
+
+  private void poll() throws IOException {
+    lastModifiedTimes = scan();
+    executor.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          Map<Path, Long> current = scan();
+          for (Map.Entry<Path, Long> file : current.entrySet()) {
+            Long previous = lastModifiedTimes.get(file.getKey());
+            if (previous == null) {
+              changed(file.getKey(), false);
+            } else if (!previous.equals(file.getValue())) {
+              changed(file.getKey(), true);
+            }
+          }
+          for (Path file : lastModifiedTimes.keySet()) {
+            if (!current.containsKey(file)) {
+              changed(file, false);
+            }
+          }
+          lastModifiedTimes = current;
+        } catch (IOException e) {
+          LOGGER.warn("Unable to scan the override directories", e);
+        }
+      }
+    }, pollIntervalMillis, pollIntervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * The modification time of every file beneath the overrides.
+   */
+  private Map<Path, Long> scan() throws IOException {
+    Map<Path, Long> files = Maps.newHashMap();
+    for (Root root : roots) {
+      if (Files.isDirectory(root.path)) {
+        files.putAll(listFiles(root.path));
+      } else if (Files.exists(root.path)) {
+        files.put(root.path, Files.getLastModifiedTime(root.path).toMillis());
+      }
+    }
+    return files;
+  }
+
+  private static Map<Path, Long> listFiles(Path directory) throws IOException {
+    final Map<Path, Long> files = Maps.newHashMap();
+    Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+        if (attrs.isRegularFile()) {
+          files.put(file, attrs.lastModifiedTime().toMillis());
+        }
+        return FileVisitResult.CONTINUE;
+      }
+    });
+    return files;
+  }
+
+  /**
+   * Tells the servlet about a changed file under every override it belongs to.
+   *
+   * @param modified whether the file was modified in place, rather than created or deleted
+   */
+  private void changed(Path file, boolean modified) {
+    for (Root root : roots) {
+      String key = root.keyFor(file);
+      if (key != null) {
+        servlet.overrideChanged(key, modified);
+      }
+    }
+  }
+
+  private void closeWatchService() throws IOException {
+    if (watchService != null) {
+      watchService.close();
+      watchService = null;
+    }
+  }
+
+  /**
+   * An override: the files beneath {@code path} are served for the keys beneath {@code keyPrefix}.
+   */
+  private static class Root {
+    private final String keyPrefix;
+    private final Path path;
+
+    private Root(String keyPrefix, Path path) {
+      this.keyPrefix = keyPrefix;
+      this.path = path.toAbsolutePath().normalize();
+    }
+
+    private String keyFor(Path file) {
+      Path absolute = file.toAbsolutePath().normalize();
+      if (absolute.equals(path)) {
+        return keyPrefix;
+      }
+      if (!absolute.startsWith(path)) {
+        return null;
+      }
+
+      String relative = path.relativize(absolute).toString().replace(File.separatorChar, '/');
+      return keyPrefix.endsWith("/") ? keyPrefix + relative : keyPrefix + '/' + relative;
+    }
+  }
+}
@@ -0,0 +1,188 @@
+package io.dropwizard.bundles.assets;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.io.Files;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Preload hints for an index document: the scripts, stylesheets and fonts it references beneath
+ * the servlet's mappings, as the value of a {@code Link} header, so that browsers start fetching
+ * them along with the document instead of once they have parsed it.  The document is scanned once,
+ * when it is loaded, rather than on every request.
+ *
+ * <p>References are sent exactly as they appear in the document, which the browser resolves
+ * against the same URL either way.  Absolute references and those on other origins are left out,
+ * as are relative references in documents with a {@code <base>} element.  References with an
+ * absolute path are matched against the mappings as they are, so they must not include the
+ * application's context path.</p>
+ */
+class PreloadHints {
+  private static final Pattern COMMENT = Pattern.compile("<!--.*?-->", Pattern.DOTALL);
+  private static final Pattern TAG =
+      Pattern.compile("<(script|link|base)\\b([^>]*)>", Pattern.CASE_INSENSITIVE);
+  private static final Pattern SCRIPT_END =
+      Pattern.compile("</script\\s*>", Pattern.CASE_INSENSITIVE);
+  private static final Pattern ATTRIBUTE = Pattern.compile(
+      "([^\\s\"'>/=]+)(?:\\s*=\\s*(?:\"([^\"]*)\"|'([^']*)'|([^\\s\"'=<>`]+)))?");
+  private static final Set<String> FONT_EXTENSIONS =
+      ImmutableSet.of("woff2", "woff", "ttf", "otf", "eot");
+  private static final Splitter TOKENS = Splitter.on(Pattern.compile("\\s+")).omitEmptyStrings();
+  private static final Pattern UNSENDABLE = Pattern.compile("[\\s<>]");
+
+  private final String key;
+  private final int maxHints;
+  private final List<String> mappings;
+  private final Charset charset;
+
+  /**
+   * @param key      the key of the index document
+   * @param maxHints the most hints to send
+   * @param mappings the URI paths of the servlet's mappings
+   * @param charset  the charset the document is in
+   */
+  PreloadHints(String key, int maxHints, Iterable<String> mappings, Charset charset) {
+    this.key = key;
+    this.maxHints = maxHints;
+    this.mappings = ImmutableList.copyOf(mappings);
+    this.charset = charset;
+  }
+
+  /**
+   * Scans an index document for the assets to preload.
+   *
+   * @return the value of the Link header, or null if there is nothing to preload or the body is
+   *         not held in memory
+   */
+  String linksFor(AssetBody body) {
+    if (body.isStreamed()) {
+      return null;
+    }
+
+    String html = COMMENT.matcher(charset.decode(body.buffer())).replaceAll("");
+    Set<String> links = Sets.newLinkedHashSet();
+    boolean based = false;
+    Matcher tag = TAG.matcher(html);
+    while (links.size() < maxHints && tag.find()) {
+      String name = tag.group(1).toLowerCase(Locale.ENGLISH);
+      Map<String, String> attributes = attributes(tag.group(2));
+      String link = null;
+      if (name.equals("base")) {
+        based |= attributes.containsKey("href");
+      } else if (name.equals("script")) {
+        link = scriptLink(attributes, based);
+        // Nothing in the script's text is markup.
+        Matcher end = SCRIPT_END.matcher(html);
+        tag.region(end.find(tag.end()) ? end.end() : html.length(), html.length());
+      } else {
+        link = linkLink(attributes, based);
+      }
+      if (link != null) {
+        links.add(link);
+      }
+    }
+    return links.isEmpty() ? null : Joiner.on(", ").join(links);
+  }
+
+  private String scriptLink(Map<String, String> attributes, boolean based) {
+    String src = reference(attributes.get("src"), based);
+    // Browsers that preload never run nomodule scripts.
+    if (src == null || attributes.containsKey("nomodule")) {
+      return null;
+    }
+
+    String type = attributes.get("type");
+    if (type == null || type.isEmpty()
+        || type.toLowerCase(Locale.ENGLISH).contains("javascript")) {
+      return '<' + src + ">; rel=preload; as=script";
+    }
+    if (type.equalsIgnoreCase("module")) {
+      return '<' + src + ">; rel=modulepreload";
+    }
+    return null;
+  }
+
+  private String linkLink(Map<String, String> attributes, boolean based) {
+    String href = reference(attributes.get("href"), based);
+    String rel = attributes.get("rel");
+    if (href == null || rel == null) {
+      return null;
+    }
+
+    Set<String> rels = Sets.newHashSet(TOKENS.split(rel.toLowerCase(Locale.ENGLISH)));
+    if (rels.contains("stylesheet") && !rels.contains("alternate")) {
+      return '<' + href + ">; rel=preload; as=style";
+    }
+    String extension = Files.getFileExtension(URI.create(href).getPath());
+    if ("font".equalsIgnoreCase(attributes.get("as"))
+        || FONT_EXTENSIONS.contains(extension.toLowerCase(Locale.ENGLISH))) {
+      // Fonts are always fetched in CORS mode.
+      return '<' + href + ">; rel=preload; as=font; crossorigin";
+    }
+    return null;
+  }
+
+  /**
+   * The reference as it is to be sent, if it is for an asset beneath one of the mappings.
+   *
+   * @return the reference, or null if it is not to be preloaded
+   */
+  private String reference(String value, boolean based) {
+    if (value == null) {
+      return null;
+    }
+
+    String reference = value.trim();
+    if (reference.isEmpty() || reference.startsWith("//")
+        || UNSENDABLE.matcher(reference).find()) {
+      return null;
+    }
+
+    try {
+      URI uri = new URI(reference);
+      if (uri.isAbsolute() || uri.getPath() == null || uri.getPath().isEmpty()
+          || (based && !uri.getPath().startsWith("/"))) {
+        return null;
+      }
+
+      String directory = key.substring(0, key.lastIndexOf('/') + 1);
+      String path = new URI(null, null, directory, null).resolve(uri).getPath();
+      for (String mapping : mappings) {
+        if (path.startsWith(mapping)) {
+          return reference;
+        }
+      }
+    } catch (URISyntaxException e) {
+      // Not a reference a browser would fetch either.
+    }
+    return null;
+  }
+
+  private static Map<String, String> attributes(String tag) {
+    Map<String, String> attributes = Maps.newHashMap();
+    Matcher attribute = ATTRIBUTE.matcher(tag);
+    while (attribute.find()) {
+      String name = attribute.group(1).toLowerCase(Locale.ENGLISH);
+      String value = attribute.group(2) != null ? attribute.group(2)
+          : attribute.group(3) != null ? attribute.group(3)
+          : attribute.group(4) != null ? attribute.group(4) : "";
+      // The first of repeated attributes wins, as in browsers.
+      if (!attributes.containsKey(name)) {
+        attributes.put(name, value);
+      }
+    }
+    return attributes;
+  }
+}
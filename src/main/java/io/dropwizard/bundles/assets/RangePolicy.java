@@ -0,0 +1,80 @@
+package io.dropwizard.bundles.assets;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Ordering;
+import io.dropwizard.servlets.assets.ByteRange;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Limits what a Range header can make the servlet send.  Without it a client could ask for
+ * thousands of overlapping ranges and turn a small asset into a huge multipart response.
+ *
+ * <p>Overlapping ranges, and ranges separated by fewer bytes than the part headers between them
+ * would take, are merged into one; RFC 7233 allows this regardless of the order the ranges were
+ * requested in.  Requests that still ask for more than {@code maxRanges} ranges are answered with
+ * the whole asset.</p>
+ */
+class RangePolicy {
+  static final int DEFAULT_MAX_RANGES = 16;
+  // About the size of the headers of one part of a multipart/byteranges response
+  static final int DEFAULT_COALESCE_GAP = 100;
+  static final RangePolicy DEFAULT = new RangePolicy(DEFAULT_MAX_RANGES, DEFAULT_COALESCE_GAP);
+
+  private static final Ordering<ByteRange> BY_START = Ordering.from(new Comparator<ByteRange>() {
+    @Override
+    public int compare(ByteRange a, ByteRange b) {
+      return Integer.compare(a.getStart(), b.getStart());
+    }
+  });
+
+  private final int maxRanges;
+  private final int coalesceGap;
+
+  RangePolicy(int maxRanges, int coalesceGap) {
+    this.maxRanges = maxRanges;
+    this.coalesceGap = coalesceGap;
+  }
+
+  /**
+   * Sorts the ranges and merges those that overlap or are no more than {@code coalesceGap} bytes
+   * apart.
+   *
+   * @return the merged ranges, or the ranges themselves, in the order they were requested, if none
+   *         could be merged
+   */
+  List<ByteRange> coalesce(List<ByteRange> ranges) {
+    if (ranges.size() < 2) {
+      return ranges;
+    }
+
+    List<ByteRange> sorted = BY_START.sortedCopy(ranges);
+    List<ByteRange> merged = Lists.newArrayListWithCapacity(sorted.size());
+    ByteRange current = sorted.get(0);
+    for (ByteRange next : sorted.subList(1, sorted.size())) {
+      if ((long) next.getStart() - current.getEnd() - 1 <= coalesceGap) {
+        current = new ByteRange(current.getStart(), Math.max(current.getEnd(), next.getEnd()));
+      } else {
+        merged.add(current);
+        current = next;
+      }
+    }
+    merged.add(current);
+    return merged.size() == ranges.size() ? ranges : merged;
+  }
+
+  /**
+   * Whether there are too many ranges to send them separately.
+   */
+  boolean isOverLimit(List<ByteRange> ranges) {
+    return ranges.size() > maxRanges;
+  }
+
+  int getMaxRanges() {
+    return maxRanges;
+  }
+
+  int getCoalesceGap() {
+    return coalesceGap;
+  }
+}
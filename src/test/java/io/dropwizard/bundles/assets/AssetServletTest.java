@@ -1,12 +1,23 @@
 package io.dropwizard.bundles.assets;
 
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Charsets;
 import com.google.common.cache.CacheBuilderSpec;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
 import com.google.common.net.HttpHeaders;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.nio.charset.Charset;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
 import org.eclipse.jetty.http.HttpHeader;
 import org.eclipse.jetty.http.HttpTester;
 import org.eclipse.jetty.http.HttpVersion;
@@ -33,6 +44,21 @@ public class AssetServletTest {
   private static final String MIME_SERVLET = "/mime_servlet/";
   private static final String MM_ASSET_SERVLET = "/mm_assets/";
   private static final String MM_JSON_SERVLET = "/mm_json/";
+  private static final String OFF_HEAP_SERVLET = "/off_heap_servlet/";
+  private static final String MAPPED_SERVLET = "/mapped_servlet/";
+  private static final String TRANSFER_SERVLET = "/transfer_servlet/";
+  private static final String CAFFEINE_SERVLET = "/caffeine_servlet/";
+  private static final String STREAMING_SERVLET = "/streaming_servlet/";
+  private static final String GZIP_SERVLET = "/gzip_servlet/";
+  private static final String CACHE_CONTROL_SERVLET = "/cache_control_servlet/";
+  private static final String REFRESHING_SERVLET = "/refreshing_servlet/";
+  private static final String FINGERPRINT_SERVLET = "/fingerprint_servlet/";
+  private static final String RANGE_SERVLET = "/range_servlet/";
+  private static final String ASYNC_SERVLET = "/async_servlet/";
+  private static final String CONTENT_TYPE_SERVLET = "/content_type_servlet/";
+  private static final String NOT_FOUND_SERVLET = "/not_found_servlet/";
+  private static final String PRELOAD_SERVLET = "/preload_servlet/";
+  private static final File REFRESHING_DIR = Files.createTempDir();
   private static final String ROOT_SERVLET = "/";
   private static final String RESOURCE_PATH = "/assets";
   private static final String JSON_RESOURCE_PATH = "/json";
@@ -105,6 +131,142 @@ public class AssetServletTest {
     }
   }
 
+  public static class OffHeapAssetServlet extends AssetServlet {
+    public OffHeapAssetServlet() {
+      super(resourceMapping(RESOURCE_PATH, OFF_HEAP_SERVLET), "index.htm", DEFAULT_CHARSET,
+              CacheBuilderSpec.parse("maximumWeight=15,concurrencyLevel=1"), EMPTY_OVERRIDES,
+              EMPTY_MIMETYPES);
+      setStorage(AssetStorage.OFF_HEAP, 1024 * 1024);
+    }
+  }
+
+  public static class MappedOverridesServlet extends AssetServlet {
+    public MappedOverridesServlet() {
+      super(resourceMapping(RESOURCE_PATH, MAPPED_SERVLET), "index.htm", DEFAULT_CHARSET,
+              DEFAULT_CACHE_SPEC,
+              ImmutableMap.of(MAPPED_SERVLET + "override/", "src/test/resources/json/").entrySet(),
+              EMPTY_MIMETYPES);
+      setMapOverrides(true);
+    }
+  }
+
+  public static class TransferOverridesServlet extends AssetServlet {
+    public TransferOverridesServlet() {
+      super(resourceMapping(RESOURCE_PATH, TRANSFER_SERVLET), "index.htm", DEFAULT_CHARSET,
+              DEFAULT_CACHE_SPEC,
+              ImmutableMap.of(TRANSFER_SERVLET + "override/", "src/test/resources/json/")
+                  .entrySet(),
+              EMPTY_MIMETYPES);
+      setTransferOverrides(true);
+    }
+  }
+
+  public static class CaffeineAssetServlet extends AssetServlet {
+    public CaffeineAssetServlet() {
+      super(resourceMapping(RESOURCE_PATH, CAFFEINE_SERVLET), "index.htm", DEFAULT_CHARSET,
+              DEFAULT_CACHE_SPEC, EMPTY_OVERRIDES, EMPTY_MIMETYPES);
+      setCacheEngine(AssetCacheEngine.CAFFEINE);
+    }
+  }
+
+  public static class StreamingAssetServlet extends AssetServlet {
+    public StreamingAssetServlet() {
+      super(resourceMapping(RESOURCE_PATH, STREAMING_SERVLET), "index.htm", DEFAULT_CHARSET,
+              DEFAULT_CACHE_SPEC, EMPTY_OVERRIDES, EMPTY_MIMETYPES);
+      setMaxCachedAssetSize(Long.MAX_VALUE, ImmutableMap.of("text/*", 5L));
+    }
+  }
+
+  public static class GzipAssetServlet extends AssetServlet {
+    public GzipAssetServlet() {
+      super(resourceMapping(RESOURCE_PATH, GZIP_SERVLET), "index.htm", DEFAULT_CHARSET,
+              DEFAULT_CACHE_SPEC, EMPTY_OVERRIDES, EMPTY_MIMETYPES);
+      setGzip(true);
+    }
+  }
+
+  public static class CacheControlServlet extends AssetServlet {
+    public CacheControlServlet() throws Exception {
+      super(resourceMapping(RESOURCE_PATH, CACHE_CONTROL_SERVLET), "index.htm", DEFAULT_CHARSET,
+              DEFAULT_CACHE_SPEC, EMPTY_OVERRIDES, EMPTY_MIMETYPES);
+      List<CacheControlPolicy> policies = new ObjectMapper().readValue("["
+              + "{\"mapping\": \"" + CACHE_CONTROL_SERVLET + "\", \"regex\": \"some_directory/.*\","
+              + " \"noCache\": true},"
+              + "{\"mapping\": \"" + CACHE_CONTROL_SERVLET + "\", \"glob\": \"**/*.{txt,mp4}\","
+              + " \"maxAge\": \"1 hour\", \"staleWhileRevalidate\": \"1 minute\","
+              + " \"immutable\": true, \"expires\": true}]",
+              new TypeReference<List<CacheControlPolicy>>() { });
+      setCacheControlPolicies(policies);
+    }
+  }
+
+  public static class RefreshingOverridesServlet extends AssetServlet {
+    public RefreshingOverridesServlet() {
+      super(resourceMapping(RESOURCE_PATH, REFRESHING_SERVLET), "index.htm", DEFAULT_CHARSET,
+              DEFAULT_CACHE_SPEC,
+              ImmutableMap.of(REFRESHING_SERVLET, REFRESHING_DIR.getPath()).entrySet(),
+              EMPTY_MIMETYPES);
+    }
+  }
+
+  public static class FingerprintingServlet extends AssetServlet {
+    public FingerprintingServlet() {
+      super(resourceMapping(RESOURCE_PATH, FINGERPRINT_SERVLET), "index.htm", DEFAULT_CHARSET,
+              DEFAULT_CACHE_SPEC, EMPTY_OVERRIDES, EMPTY_MIMETYPES);
+      setFingerprint(true);
+      setManifestPath(FINGERPRINT_SERVLET + "manifest.json");
+    }
+  }
+
+  public static class RangePolicyServlet extends AssetServlet {
+    public RangePolicyServlet() {
+      super(resourceMapping(RESOURCE_PATH, RANGE_SERVLET), "index.htm", DEFAULT_CHARSET,
+              DEFAULT_CACHE_SPEC, EMPTY_OVERRIDES, EMPTY_MIMETYPES);
+      setRangePolicy(3, 0);
+    }
+  }
+
+  public static class ContentTypeServlet extends AssetServlet {
+    public ContentTypeServlet() {
+      super(resourceMapping(RESOURCE_PATH, CONTENT_TYPE_SERVLET), "index.htm", DEFAULT_CHARSET,
+              DEFAULT_CACHE_SPEC, EMPTY_OVERRIDES, EMPTY_MIMETYPES);
+    }
+  }
+
+  public static class NotFoundPagesServlet extends AssetServlet {
+    public NotFoundPagesServlet() {
+      super(resourceMapping(RESOURCE_PATH, NOT_FOUND_SERVLET), "index.htm", DEFAULT_CHARSET,
+              DEFAULT_CACHE_SPEC, EMPTY_OVERRIDES, EMPTY_MIMETYPES);
+      setNotFoundPages("text/plain", "NOT HERE",
+          ImmutableMap.of(NOT_FOUND_SERVLET + "some_directory", "NOT IN THIS DIRECTORY"));
+    }
+  }
+
+  public static class PreloadHintsServlet extends AssetServlet {
+    public PreloadHintsServlet() {
+      super(resourceMapping(RESOURCE_PATH, PRELOAD_SERVLET), "index.htm", DEFAULT_CHARSET,
+              DEFAULT_CACHE_SPEC, EMPTY_OVERRIDES, EMPTY_MIMETYPES);
+      setPreloadHints(ImmutableMap.of(PRELOAD_SERVLET, 2));
+    }
+  }
+
+  public static class AsyncWritesServlet extends AssetServlet {
+    public AsyncWritesServlet() {
+      super(resourceMapping(RESOURCE_PATH, ASYNC_SERVLET), "index.htm", DEFAULT_CHARSET,
+              DEFAULT_CACHE_SPEC, EMPTY_OVERRIDES, EMPTY_MIMETYPES);
+      setStorage(AssetStorage.OFF_HEAP, 1024 * 1024);
+      setAsyncWrites(100, 10000);
+      setRangePolicy(16, 0);
+    }
+  }
+
+  private final OffHeapAssetServlet offHeapServlet = new OffHeapAssetServlet();
+  private final MultipleMappingsServlet multipleMappingsServlet = new MultipleMappingsServlet();
+  private final RefreshingOverridesServlet refreshingServlet = new RefreshingOverridesServlet();
+  private final FingerprintingServlet fingerprintingServlet = new FingerprintingServlet();
+  private final RangePolicyServlet rangePolicyServlet = new RangePolicyServlet();
+  private final ContentTypeServlet contentTypeServlet = new ContentTypeServlet();
+  private final PreloadHintsServlet preloadHintsServlet = new PreloadHintsServlet();
   private final ServletTester servletTester = new ServletTester();
   private final HttpTester.Request request = HttpTester.newRequest();
   private HttpTester.Response response;
@@ -125,8 +287,24 @@ public class AssetServletTest {
     servletTester.addServlet(NoCharsetAssetServlet.class, NOCHARSET_SERVLET + '*');
     servletTester.addServlet(RootAssetServlet.class, ROOT_SERVLET + '*');
     servletTester.addServlet(MimeMappingsServlet.class, MIME_SERVLET + '*');
-
-    ServletHolder servlet = new ServletHolder(new MultipleMappingsServlet());
+    servletTester.addServlet(new ServletHolder(offHeapServlet), OFF_HEAP_SERVLET + '*');
+    servletTester.addServlet(MappedOverridesServlet.class, MAPPED_SERVLET + '*');
+    servletTester.addServlet(TransferOverridesServlet.class, TRANSFER_SERVLET + '*');
+    servletTester.addServlet(CaffeineAssetServlet.class, CAFFEINE_SERVLET + '*');
+    servletTester.addServlet(StreamingAssetServlet.class, STREAMING_SERVLET + '*');
+    servletTester.addServlet(GzipAssetServlet.class, GZIP_SERVLET + '*');
+    servletTester.addServlet(CacheControlServlet.class, CACHE_CONTROL_SERVLET + '*');
+    servletTester.addServlet(new ServletHolder(refreshingServlet), REFRESHING_SERVLET + '*');
+    servletTester.addServlet(new ServletHolder(fingerprintingServlet), FINGERPRINT_SERVLET + '*');
+    servletTester.addServlet(new ServletHolder(rangePolicyServlet), RANGE_SERVLET + '*');
+    servletTester.addServlet(new ServletHolder(contentTypeServlet), CONTENT_TYPE_SERVLET + '*');
+    servletTester.addServlet(NotFoundPagesServlet.class, NOT_FOUND_SERVLET + '*');
+    servletTester.addServlet(new ServletHolder(preloadHintsServlet), PRELOAD_SERVLET + '*');
+    ServletHolder asyncServlet = new ServletHolder(AsyncWritesServlet.class);
+    asyncServlet.setAsyncSupported(true);
+    servletTester.addServlet(asyncServlet, ASYNC_SERVLET + '*');
+
+    ServletHolder servlet = new ServletHolder(multipleMappingsServlet);
     servletTester.addServlet(servlet, MM_ASSET_SERVLET + '*');
     servletTester.addServlet(servlet, MM_JSON_SERVLET + '*');
     servletTester.start();
@@ -168,6 +346,23 @@ public class AssetServletTest {
             .isEqualTo(MimeTypes.Type.TEXT_PLAIN.toString());
   }
 
+  @Test
+  public void servesTheNewContentTypeOfCachedAssets() throws Exception {
+    response = makeRequest(CONTENT_TYPE_SERVLET + "example.txt");
+    assertThat(MimeTypes.CACHE.get(response.get(HttpHeader.CONTENT_TYPE)))
+            .isEqualTo(MimeTypes.Type.TEXT_PLAIN_UTF_8);
+
+    contentTypeServlet.setDefaultCharset(null);
+    response = makeRequest();
+    assertThat(response.get(HttpHeader.CONTENT_TYPE))
+            .isEqualTo(MimeTypes.Type.TEXT_PLAIN.toString());
+
+    contentTypeServlet.setMimeTypes(ImmutableMap.of("txt", "application/foo").entrySet());
+    response = makeRequest();
+    assertThat(response.get(HttpHeader.CONTENT_TYPE))
+            .isEqualTo("application/foo");
+  }
+
   @Test
   public void servesFilesFromRootsWithSameName() throws Exception {
     response = makeRequest(DUMMY_SERVLET + "example2.txt");
@@ -193,6 +388,577 @@ public class AssetServletTest {
             .isEqualTo(404);
   }
 
+  @Test
+  public void remembersMissingAssets() throws Exception {
+    response = makeRequest(MM_ASSET_SERVLET + "doesnotexist.txt");
+    assertThat(response.getStatus())
+            .isEqualTo(404);
+
+    response = makeRequest(MM_ASSET_SERVLET + "doesnotexist.txt");
+    assertThat(response.getStatus())
+            .isEqualTo(404);
+    assertThat(multipleMappingsServlet.getMissingAssetCacheStats().hitCount())
+            .isEqualTo(1);
+  }
+
+  @Test
+  public void servesConfiguredNotFoundPages() throws Exception {
+    response = makeRequest(NOT_FOUND_SERVLET + "doesnotexist.txt");
+    assertThat(response.getStatus()).isEqualTo(404);
+    assertThat(MimeTypes.CACHE.get(response.get(HttpHeader.CONTENT_TYPE)))
+            .isEqualTo(MimeTypes.Type.TEXT_PLAIN_UTF_8);
+    assertThat(response.getContent()).isEqualTo("NOT HERE");
+
+    // Answered from the missing asset cache
+    response = makeRequest();
+    assertThat(response.getStatus()).isEqualTo(404);
+    assertThat(response.getContent()).isEqualTo("NOT HERE");
+
+    response = makeRequest(NOT_FOUND_SERVLET + "some_directory/doesnotexist.txt");
+    assertThat(response.getStatus()).isEqualTo(404);
+    assertThat(response.getContent()).isEqualTo("NOT IN THIS DIRECTORY");
+  }
+
+  @Test
+  public void sendsPreloadHintsWithIndexDocuments() throws Exception {
+    response = makeRequest(PRELOAD_SERVLET + "preloading/");
+    assertThat(response.getStatus())
+            .isEqualTo(200);
+    assertThat(response.get(HttpHeaders.LINK))
+            .isEqualTo("<app.css>; rel=preload; as=style, "
+                    + "<../example.txt>; rel=preload; as=script");
+
+    response = makeRequest(PRELOAD_SERVLET + "example.txt");
+    assertThat(response.get(HttpHeaders.LINK))
+            .isNull();
+
+    preloadHintsServlet.setPreloadHints(ImmutableMap.<String, Integer>of());
+    response = makeRequest(PRELOAD_SERVLET + "preloading/");
+    assertThat(response.get(HttpHeaders.LINK))
+            .isNull();
+  }
+
+  @Test
+  public void servesAssetsStoredOffHeap() throws Exception {
+    response = makeRequest(OFF_HEAP_SERVLET + "example.txt");
+    assertThat(response.getStatus())
+            .isEqualTo(200);
+    assertThat(response.getContent())
+            .isEqualTo("HELLO THERE");
+    assertThat(response.get(HttpHeaders.ETAG))
+            .isEqualTo("\"174a6dd7325e64c609eab14ab1d30b86\"");
+    assertThat(offHeapServlet.getOffHeapBytesUsed())
+            .isEqualTo(11);
+
+    request.setHeader(HttpHeaders.RANGE, "bytes=4-8");
+    response = makeRequest();
+    assertThat(response.getStatus()).isEqualTo(206);
+    assertThat(response.getContent()).isEqualTo("O THE");
+
+  }
+
+  @Test
+  public void freesOffHeapAssetsAsTheyLeaveTheCache() throws Exception {
+    makeRequest(OFF_HEAP_SERVLET + "example.txt");
+    assertThat(offHeapServlet.getOffHeapBytesUsed())
+            .isEqualTo(11);
+
+    // foo.bar does not fit alongside example.txt, which is evicted.
+    response = makeRequest(OFF_HEAP_SERVLET + "foo.bar");
+    assertThat(response.getStatus())
+            .isEqualTo(200);
+    assertThat(offHeapServlet.getOffHeapBytesUsed())
+            .isEqualTo(10);
+
+    offHeapServlet.setMimeTypes(EMPTY_MIMETYPES);
+    assertThat(offHeapServlet.getOffHeapBytesUsed())
+            .isEqualTo(0);
+  }
+
+  @Test
+  public void keepsOffHeapBodiesUntilTheLastResponseReleasesThem() throws Exception {
+    final AssetAllocator allocator = new AssetAllocator(1024);
+    final AssetBody body = allocator.allocate("HELLO THERE".getBytes(Charsets.US_ASCII));
+    assertThat(allocator.getAllocated())
+            .isEqualTo(11);
+
+    // A response starts writing the body, then the cache lets go of it.
+    assertThat(body.retain())
+            .isTrue();
+    body.release();
+    assertThat(allocator.getAllocated())
+            .isEqualTo(11);
+    assertThat(Charsets.US_ASCII.decode(body.buffer()).toString())
+            .isEqualTo("HELLO THERE");
+
+    body.release();
+    assertThat(allocator.getAllocated())
+            .isEqualTo(0);
+    assertThat(body.retain())
+            .isFalse();
+  }
+
+  @Test
+  public void servesMappedOverrides() throws Exception {
+    response = makeRequest(MAPPED_SERVLET + "override/example.txt");
+    assertThat(response.getStatus())
+            .isEqualTo(200);
+    assertThat(response.getContent())
+            .isEqualTo("HELLO JSON");
+    assertThat(response.get(HttpHeaders.ETAG))
+            .startsWith("\"a-");
+
+    request.setHeader(HttpHeaders.RANGE, "bytes=6-9");
+    response = makeRequest();
+    assertThat(response.getStatus()).isEqualTo(206);
+    assertThat(response.getContent()).isEqualTo("JSON");
+
+    request.remove(HttpHeaders.RANGE);
+    response = makeRequest(MAPPED_SERVLET + "example.txt");
+    assertThat(response.getContent())
+            .isEqualTo("HELLO THERE");
+  }
+
+  @Test
+  public void servesTransferredOverrides() throws Exception {
+    response = makeRequest(TRANSFER_SERVLET + "override/example.txt");
+    assertThat(response.getStatus())
+            .isEqualTo(200);
+    assertThat(response.getContent())
+            .isEqualTo("HELLO JSON");
+    assertThat(response.get(HttpHeaders.ETAG))
+            .startsWith("\"a-");
+
+    request.setHeader(HttpHeaders.RANGE, "bytes=6-9");
+    response = makeRequest();
+    assertThat(response.getStatus()).isEqualTo(206);
+    assertThat(response.get(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 6-9/10");
+    assertThat(response.getContent()).isEqualTo("JSON");
+
+    request.setHeader(HttpHeaders.RANGE, "bytes=-4");
+    response = makeRequest();
+    assertThat(response.getStatus()).isEqualTo(206);
+    assertThat(response.getContent()).isEqualTo("JSON");
+  }
+
+  @Test
+  public void warmsUpEveryMappedAsset() throws Exception {
+    int loaded = multipleMappingsServlet.warmUp(MoreExecutors.newDirectExecutorService());
+    assertThat(loaded)
+            .isGreaterThanOrEqualTo(11);
+
+    response = makeRequest(MM_JSON_SERVLET + "json%20only.txt");
+    assertThat(response.getStatus())
+            .isEqualTo(200);
+  }
+
+  @Test
+  public void stopsWarmingUpOnceTheCacheIsFull() throws Exception {
+    final AssetServlet smallServlet = new AssetServlet(
+            resourceMapping(RESOURCE_PATH, DUMMY_SERVLET), "index.htm", DEFAULT_CHARSET,
+            CacheBuilderSpec.parse("maximumSize=2"), EMPTY_OVERRIDES, EMPTY_MIMETYPES);
+    assertThat(smallServlet.warmUp(MoreExecutors.newDirectExecutorService()))
+            .isEqualTo(2);
+  }
+
+  @Test
+  public void reportsReadyOnceTheBackgroundWarmUpFinishes() throws Exception {
+    final AssetWarmer warmer = new AssetWarmer(multipleMappingsServlet, 1);
+    assertThat(warmer.readinessCheck().execute().isHealthy())
+            .isFalse();
+
+    warmer.start();
+    try {
+      for (int i = 0; i < 100 && !warmer.isReady(); i++) {
+        Thread.sleep(50);
+      }
+    } finally {
+      warmer.stop();
+    }
+    assertThat(warmer.readinessCheck().execute().isHealthy())
+            .isTrue();
+    assertThat(warmer.getAssetCount())
+            .isGreaterThanOrEqualTo(11);
+  }
+
+  @Test
+  public void leavesClassesAndMetadataOutOfClasspathRootScans() throws Exception {
+    final Set<String> paths = AssetScanner.list("");
+    assertThat(paths)
+            .contains("assets/example.txt");
+    for (String path : paths) {
+      assertThat(path)
+              .doesNotEndWith(".class")
+              .doesNotStartWith("META-INF/");
+    }
+  }
+
+  @Test
+  public void servesChangedOverridesAfterRefresh() throws Exception {
+    File file = new File(REFRESHING_DIR, "changing.txt");
+    Files.write("BEFORE", file, Charsets.UTF_8);
+    file.setLastModified(1000000000000L);
+
+    response = makeRequest(REFRESHING_SERVLET + "changing.txt");
+    assertThat(response.getContent())
+            .isEqualTo("BEFORE");
+
+    Files.write("AFTER", file, Charsets.UTF_8);
+    file.setLastModified(1000000060000L);
+
+    // The request that notices the change is still served the previous version.
+    for (int i = 0; i < 100 && "BEFORE".equals(response.getContent()); i++) {
+      Thread.sleep(10);
+      response = makeRequest();
+    }
+    assertThat(response.getContent())
+            .isEqualTo("AFTER");
+    assertThat(response.getDateField(HttpHeaders.LAST_MODIFIED))
+            .isEqualTo(1000000060000L);
+  }
+
+  @Test
+  public void pollsOverridesForChanges() throws Exception {
+    File file = new File(REFRESHING_DIR, "polled.txt");
+    file.delete();
+    response = makeRequest(REFRESHING_SERVLET + "polled.txt");
+    assertThat(response.getStatus())
+            .isEqualTo(404);
+
+    OverrideWatcher watcher = new OverrideWatcher(refreshingServlet, OverrideWatchMode.POLL, 10);
+    watcher.start();
+    try {
+      Files.write("CREATED", file, Charsets.UTF_8);
+      for (int i = 0; i < 100 && response.getStatus() == 404; i++) {
+        Thread.sleep(10);
+        response = makeRequest();
+      }
+      assertThat(response.getContent())
+              .isEqualTo("CREATED");
+
+      Files.write("MODIFIED", file, Charsets.UTF_8);
+      file.setLastModified(file.lastModified() + 60000L);
+      for (int i = 0; i < 100 && "CREATED".equals(response.getContent()); i++) {
+        Thread.sleep(10);
+        response = makeRequest();
+      }
+      assertThat(response.getContent())
+              .isEqualTo("MODIFIED");
+    } finally {
+      watcher.stop();
+    }
+  }
+
+  @Test
+  public void servesGzipVariantToClientsThatAcceptIt() throws Exception {
+    response = makeRequest(GZIP_SERVLET + "compressible.txt");
+    final String content = response.getContent();
+    final String etag = response.get(HttpHeaders.ETAG);
+    assertThat(response.get(HttpHeaders.CONTENT_ENCODING))
+            .isNull();
+    assertThat(response.get(HttpHeaders.VARY))
+            .isEqualTo(HttpHeaders.ACCEPT_ENCODING);
+
+    request.setHeader(HttpHeaders.ACCEPT_ENCODING, "deflate, gzip");
+    response = makeRequest();
+    assertThat(response.getStatus())
+            .isEqualTo(200);
+    assertThat(response.get(HttpHeaders.CONTENT_ENCODING))
+            .isEqualTo("gzip");
+    assertThat(response.get(HttpHeaders.VARY))
+            .isEqualTo(HttpHeaders.ACCEPT_ENCODING);
+    assertThat(response.get(HttpHeaders.ETAG))
+            .isNotEqualTo(etag);
+    assertThat(response.getContentBytes().length)
+            .isLessThan(content.length());
+    assertThat(new String(ByteStreams.toByteArray(
+            new GZIPInputStream(new ByteArrayInputStream(response.getContentBytes()))),
+            Charsets.UTF_8))
+            .isEqualTo(content);
+
+    request.setHeader(HttpHeaders.ACCEPT_ENCODING, "gzip;q=0");
+    response = makeRequest();
+    assertThat(response.get(HttpHeaders.CONTENT_ENCODING))
+            .isNull();
+    assertThat(response.getContent())
+            .isEqualTo(content);
+  }
+
+  @Test
+  public void servesPrecompressedSiblingsByAcceptEncoding() throws Exception {
+    response = makeRequest(DUMMY_SERVLET + "precompressed.txt");
+    final String etag = response.get(HttpHeaders.ETAG);
+    assertThat(response.get(HttpHeaders.CONTENT_ENCODING))
+            .isNull();
+    assertThat(response.get(HttpHeaders.CONTENT_LENGTH))
+            .isEqualTo("580");
+    assertThat(response.get(HttpHeaders.VARY))
+            .isEqualTo(HttpHeaders.ACCEPT_ENCODING);
+
+    // Equally preferred codings are broken by size
+    request.setHeader(HttpHeaders.ACCEPT_ENCODING, "gzip, br");
+    response = makeRequest();
+    assertThat(response.get(HttpHeaders.CONTENT_ENCODING))
+            .isEqualTo("br");
+    assertThat(response.get(HttpHeaders.CONTENT_LENGTH))
+            .isEqualTo("6");
+    assertThat(response.getContent())
+            .isEqualTo("BROTLI");
+    final String brotliETag = response.get(HttpHeaders.ETAG);
+    assertThat(brotliETag)
+            .isNotEqualTo(etag);
+
+    request.setHeader(HttpHeaders.ACCEPT_ENCODING, "br;q=0.5, gzip");
+    response = makeRequest();
+    assertThat(response.get(HttpHeaders.CONTENT_ENCODING))
+            .isEqualTo("gzip");
+    assertThat(response.get(HttpHeaders.CONTENT_LENGTH))
+            .isEqualTo("57");
+    assertThat(response.get(HttpHeaders.ETAG))
+            .isNotEqualTo(etag)
+            .isNotEqualTo(brotliETag);
+
+    request.setHeader(HttpHeaders.ACCEPT_ENCODING, "identity, *;q=0.5");
+    response = makeRequest();
+    assertThat(response.get(HttpHeaders.CONTENT_ENCODING))
+            .isNull();
+    assertThat(response.get(HttpHeaders.ETAG))
+            .isEqualTo(etag);
+  }
+
+  @Test
+  public void usesETagsAndTimesFromTheAssetIndex() throws Exception {
+    response = makeRequest(DUMMY_SERVLET + "indexed.txt");
+    assertThat(response.getContent())
+            .isEqualTo("INDEXED AT BUILD TIME");
+    assertThat(response.get(HttpHeaders.ETAG))
+            .isEqualTo("\"0123456789abcdef0123456789abcdef\"");
+    assertThat(response.getDateField(HttpHeaders.LAST_MODIFIED))
+            .isEqualTo(1420070400000L);
+  }
+
+  @Test
+  public void setsCacheControlFromTheFirstMatchingPolicy() throws Exception {
+    response = makeRequest(CACHE_CONTROL_SERVLET + "example.txt");
+    assertThat(response.get(HttpHeaders.CACHE_CONTROL))
+            .isEqualTo("max-age=3600, stale-while-revalidate=60, immutable");
+    assertThat(response.getDateField(HttpHeaders.EXPIRES))
+            .isGreaterThan(System.currentTimeMillis() + 3500 * 1000L);
+
+    response = makeRequest(CACHE_CONTROL_SERVLET + "some_directory/example.txt");
+    assertThat(response.get(HttpHeaders.CACHE_CONTROL))
+            .isEqualTo("no-cache");
+    assertThat(response.get(HttpHeaders.EXPIRES))
+            .isNull();
+
+    response = makeRequest(CACHE_CONTROL_SERVLET + "foo.bar");
+    assertThat(response.get(HttpHeaders.CACHE_CONTROL))
+            .isNull();
+  }
+
+  @Test
+  public void servesFingerprintedPathsForAYear() throws Exception {
+    String path = new AssetUrlResolver(fingerprintingServlet)
+            .resolve(FINGERPRINT_SERVLET + "example.txt");
+    assertThat(path)
+            .matches(FINGERPRINT_SERVLET + "example\\.[0-9a-f]{12}\\.txt");
+
+    response = makeRequest(path);
+    assertThat(response.getStatus())
+            .isEqualTo(200);
+    assertThat(response.getContent())
+            .isEqualTo("HELLO THERE");
+    assertThat(response.get(HttpHeaders.CACHE_CONTROL))
+            .isEqualTo("public, max-age=31536000, immutable");
+    assertThat(response.getDateField(HttpHeaders.EXPIRES))
+            .isGreaterThan(System.currentTimeMillis());
+
+    response = makeRequest(FINGERPRINT_SERVLET + "example.txt");
+    assertThat(response.getContent())
+            .isEqualTo("HELLO THERE");
+    assertThat(response.get(HttpHeaders.CACHE_CONTROL))
+            .isNull();
+  }
+
+  @Test
+  public void doesNotServeOutOfDateFingerprints() throws Exception {
+    response = makeRequest(FINGERPRINT_SERVLET + "example.000000000000.txt");
+    assertThat(response.getStatus())
+            .isEqualTo(404);
+  }
+
+  @Test
+  public void servesAManifestOfFingerprintedPaths() throws Exception {
+    response = makeRequest(FINGERPRINT_SERVLET + "manifest.json");
+    assertThat(response.getStatus())
+            .isEqualTo(200);
+    assertThat(response.get(HttpHeaders.CONTENT_TYPE))
+            .startsWith("application/json");
+
+    Map<String, String> manifest = new ObjectMapper().readValue(response.getContent(),
+            new TypeReference<Map<String, String>>() { });
+    assertThat(manifest)
+            .containsEntry(FINGERPRINT_SERVLET + "example.txt", new AssetUrlResolver(
+                    fingerprintingServlet).resolve(FINGERPRINT_SERVLET + "example.txt"))
+            .doesNotContainKey(FINGERPRINT_SERVLET);
+  }
+
+  @Test
+  public void buildsTheManifestWithoutCachingAssets() throws Exception {
+    final MetricRegistry registry = new MetricRegistry();
+    fingerprintingServlet.registerMetrics(registry, "assets");
+
+    response = makeRequest(FINGERPRINT_SERVLET + "manifest.json");
+    Map<String, String> manifest = new ObjectMapper().readValue(response.getContent(),
+            new TypeReference<Map<String, String>>() { });
+    assertThat(manifest)
+            .containsKey(FINGERPRINT_SERVLET + "precompressed.txt")
+            .doesNotContainKey(FINGERPRINT_SERVLET + "precompressed.txt.gz")
+            .doesNotContainKey(FINGERPRINT_SERVLET + "precompressed.txt.br");
+    assertThat(registry.getGauges().get("assets.entries").getValue())
+            .isEqualTo(0L);
+    assertThat(registry.meter("assets.misses").getCount())
+            .isEqualTo(0);
+  }
+
+  @Test
+  public void doesNotGzipAssetsThatDoNotCompress() throws Exception {
+    request.setHeader(HttpHeaders.ACCEPT_ENCODING, "gzip");
+    response = makeRequest(GZIP_SERVLET + "example.txt");
+    assertThat(response.getContent())
+            .isEqualTo("HELLO THERE");
+    assertThat(response.get(HttpHeaders.CONTENT_ENCODING))
+            .isNull();
+    assertThat(response.get(HttpHeaders.VARY))
+            .isNull();
+  }
+
+  @Test
+  public void servesAssetsFromCaffeineCache() throws Exception {
+    response = makeRequest(CAFFEINE_SERVLET + "example.txt");
+    assertThat(response.getStatus())
+            .isEqualTo(200);
+    assertThat(response.getContent())
+            .isEqualTo("HELLO THERE");
+
+    response = makeRequest(CAFFEINE_SERVLET);
+    assertThat(response.getContent())
+            .contains("/assets Index File");
+
+    response = makeRequest(CAFFEINE_SERVLET + "doesnotexist.txt");
+    assertThat(response.getStatus())
+            .isEqualTo(404);
+  }
+
+  @Test
+  public void dropsTheConcurrencyLevelFromCaffeineSpecs() throws Exception {
+    final CacheBuilderSpec spec =
+            CacheBuilderSpec.parse("maximumSize=100,concurrencyLevel=4,expireAfterAccess=10m");
+    assertThat(CaffeineAssetCache.caffeineSpec(spec))
+            .isEqualTo("maximumSize=100,expireAfterAccess=10m");
+
+    final AssetServlet caffeineServlet = new AssetServlet(
+            resourceMapping(RESOURCE_PATH, CAFFEINE_SERVLET), "index.htm", DEFAULT_CHARSET, spec,
+            EMPTY_OVERRIDES, EMPTY_MIMETYPES);
+    caffeineServlet.setCacheEngine(AssetCacheEngine.CAFFEINE);
+    assertThat(caffeineServlet.getCacheEngine())
+            .isEqualTo(AssetCacheEngine.CAFFEINE);
+  }
+
+  @Test
+  public void streamsAssetsAboveTheCachedSizeLimit() throws Exception {
+    response = makeRequest(STREAMING_SERVLET + "example.txt");
+    assertThat(response.getStatus())
+            .isEqualTo(200);
+    assertThat(response.getContent())
+            .isEqualTo("HELLO THERE");
+    assertThat(response.get(HttpHeaders.ETAG))
+            .startsWith("\"b-");
+
+    request.setHeader(HttpHeaders.RANGE, "bytes=4-8");
+    response = makeRequest();
+    assertThat(response.getStatus()).isEqualTo(206);
+    assertThat(response.getContent()).isEqualTo("O THE");
+
+    request.remove(HttpHeaders.RANGE);
+    response = makeRequest(STREAMING_SERVLET + "foo.bar");
+    assertThat(response.getStatus())
+            .isEqualTo(200);
+    assertThat(response.get(HttpHeaders.ETAG))
+            .doesNotContain("-");
+  }
+
+  @Test
+  public void recordsCacheMetrics() throws Exception {
+    final MetricRegistry registry = new MetricRegistry();
+    multipleMappingsServlet.registerMetrics(registry, "assets");
+
+    makeRequest(MM_ASSET_SERVLET + "example.txt");
+    makeRequest(MM_ASSET_SERVLET + "example.txt");
+
+    assertThat(registry.meter("assets.misses").getCount())
+            .isEqualTo(1);
+    assertThat(registry.meter("assets.hits").getCount())
+            .isEqualTo(1);
+    assertThat(registry.timer("assets.loads").getCount())
+            .isEqualTo(1);
+    assertThat(registry.getGauges().get("assets.entries").getValue())
+            .isEqualTo(1L);
+    assertThat(registry.getGauges().get("assets.weight").getValue())
+            .isEqualTo(11L);
+  }
+
+  @Test
+  public void replacesTheGaugesOfAServletRegisteredUnderTheSameName() throws Exception {
+    final MetricRegistry registry = new MetricRegistry();
+    fingerprintingServlet.registerMetrics(registry, "assets");
+    multipleMappingsServlet.registerMetrics(registry, "assets");
+
+    makeRequest(MM_ASSET_SERVLET + "example.txt");
+
+    assertThat(registry.getGauges().get("assets.entries").getValue())
+            .isEqualTo(1L);
+  }
+
+  @Test
+  public void answersHeadRequestsWithoutLoadingIndexedAssets() throws Exception {
+    final MetricRegistry registry = new MetricRegistry();
+    multipleMappingsServlet.registerMetrics(registry, "assets");
+
+    request.setMethod("HEAD");
+    response = makeRequest(MM_ASSET_SERVLET + "indexed.txt");
+    assertThat(response.getStatus())
+            .isEqualTo(200);
+    assertThat(response.get(HttpHeaders.ETAG))
+            .isEqualTo("\"0123456789abcdef0123456789abcdef\"");
+    assertThat(response.get(HttpHeaders.CONTENT_LENGTH))
+            .isEqualTo("21");
+    assertThat(response.get(HttpHeaders.CONTENT_TYPE))
+            .startsWith("text/plain");
+    assertThat(registry.timer("assets.loads").getCount())
+            .isEqualTo(0);
+    assertThat(registry.getGauges().get("assets.entries").getValue())
+            .isEqualTo(0L);
+  }
+
+  @Test
+  public void answersHeadRequestsWithTheHeadersOfAGet() throws Exception {
+    response = makeRequest(MM_ASSET_SERVLET + "example.txt");
+    final String etag = response.get(HttpHeaders.ETAG);
+
+    request.setMethod("HEAD");
+    request.setHeader(HttpHeaders.RANGE, "bytes=0-0");
+    response = makeRequest();
+    assertThat(response.getStatus())
+            .isEqualTo(200);
+    assertThat(response.get(HttpHeaders.ETAG))
+            .isEqualTo(etag);
+    assertThat(response.get(HttpHeaders.CONTENT_LENGTH))
+            .isEqualTo("11");
+    assertThat(response.getContentBytes())
+            .isNullOrEmpty();
+  }
+
   @Test
   public void consistentlyAssignsETags() throws Exception {
     response = makeRequest();
@@ -239,6 +1005,80 @@ public class AssetServletTest {
             .isEqualTo(200);
   }
 
+  @Test
+  public void supportsIfNoneMatchListsAndWeakTags() throws Exception {
+    response = makeRequest();
+    final String correctEtag = response.get(HttpHeaders.ETAG);
+
+    request.setHeader(HttpHeaders.IF_NONE_MATCH, "\"other\", W/" + correctEtag);
+    response = makeRequest();
+    assertThat(response.getStatus()).isEqualTo(304);
+
+    request.setHeader(HttpHeaders.IF_NONE_MATCH, "*");
+    response = makeRequest();
+    assertThat(response.getStatus()).isEqualTo(304);
+
+    request.setHeader(HttpHeaders.IF_NONE_MATCH, "\"other\", \"another\"");
+    response = makeRequest();
+    assertThat(response.getStatus()).isEqualTo(200);
+  }
+
+  @Test
+  public void sendsCachingHeadersWithNotModified() throws Exception {
+    response = makeRequest(CACHE_CONTROL_SERVLET + "example.txt");
+    final String correctEtag = response.get(HttpHeaders.ETAG);
+
+    request.setHeader(HttpHeaders.IF_NONE_MATCH, correctEtag);
+    response = makeRequest();
+    assertThat(response.getStatus()).isEqualTo(304);
+    assertThat(response.get(HttpHeaders.ETAG)).isEqualTo(correctEtag);
+    assertThat(response.get(HttpHeaders.CACHE_CONTROL))
+            .isEqualTo("max-age=3600, stale-while-revalidate=60, immutable");
+    assertThat(response.get(HttpHeaders.LAST_MODIFIED)).isNotNull();
+    assertThat(response.getContent()).isEmpty();
+  }
+
+  @Test
+  public void supportsIfMatchRequests() throws Exception {
+    response = makeRequest();
+    final String correctEtag = response.get(HttpHeaders.ETAG);
+
+    request.setHeader(HttpHeaders.IF_MATCH, "\"other\", " + correctEtag);
+    response = makeRequest();
+    assertThat(response.getStatus()).isEqualTo(200);
+
+    request.setHeader(HttpHeaders.IF_MATCH, "*");
+    response = makeRequest();
+    assertThat(response.getStatus()).isEqualTo(200);
+
+    // If-Match uses the strong comparison
+    request.setHeader(HttpHeaders.IF_MATCH, "W/" + correctEtag);
+    response = makeRequest();
+    assertThat(response.getStatus()).isEqualTo(412);
+
+    request.setHeader(HttpHeaders.IF_MATCH, "\"other\"");
+    response = makeRequest();
+    assertThat(response.getStatus()).isEqualTo(412);
+  }
+
+  @Test
+  public void supportsIfUnmodifiedSinceRequests() throws Exception {
+    response = makeRequest();
+    final long lastModifiedTime = response.getDateField(HttpHeaders.LAST_MODIFIED);
+
+    request.putDateField(HttpHeaders.IF_UNMODIFIED_SINCE, lastModifiedTime);
+    response = makeRequest();
+    assertThat(response.getStatus()).isEqualTo(200);
+
+    request.putDateField(HttpHeaders.IF_UNMODIFIED_SINCE, lastModifiedTime - 1000);
+    response = makeRequest();
+    assertThat(response.getStatus()).isEqualTo(412);
+
+    request.setHeader(HttpHeaders.IF_UNMODIFIED_SINCE, "not a date");
+    response = makeRequest();
+    assertThat(response.getStatus()).isEqualTo(200);
+  }
+
   @Test
   public void consistentlyAssignsLastModifiedTimes() throws Exception {
     response = makeRequest();
@@ -262,6 +1102,17 @@ public class AssetServletTest {
     assertThat(response.get(HttpHeaders.ACCEPT_RANGES)).isEqualTo("bytes");
   }
 
+  @Test
+  public void setsContentLength() throws Exception {
+    response = makeRequest(ROOT_SERVLET + "assets/example.txt");
+    assertThat(response.get(HttpHeaders.CONTENT_LENGTH)).isEqualTo("11");
+
+    request.setHeader(HttpHeaders.RANGE, "bytes=4-8");
+    response = makeRequest();
+    assertThat(response.getStatus()).isEqualTo(206);
+    assertThat(response.get(HttpHeaders.CONTENT_LENGTH)).isEqualTo("5");
+  }
+
   @Test
   public void supportsFullByteRange() throws Exception {
     request.setHeader(HttpHeaders.RANGE, "bytes=0-");
@@ -325,25 +1176,148 @@ public class AssetServletTest {
     assertThat(response.getStatus()).isEqualTo(416);
   }
 
+  @Test
+  public void clampsByteRangesToTheAsset() throws Exception {
+    // The end of the range is beyond the asset
+    request.setHeader(HttpHeaders.RANGE, "bytes=6-1000");
+    response = makeRequest(RANGE_SERVLET + "example.txt");
+    assertThat(response.getStatus()).isEqualTo(206);
+    assertThat(response.get(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 6-10/11");
+    assertThat(response.get(HttpHeaders.CONTENT_LENGTH)).isEqualTo("5");
+    assertThat(response.getContent()).isEqualTo("THERE");
+
+    // The suffix is longer than the asset
+    request.setHeader(HttpHeaders.RANGE, "bytes=-100");
+    response = makeRequest();
+    assertThat(response.getStatus()).isEqualTo(206);
+    assertThat(response.get(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 0-10/11");
+    assertThat(response.getContent()).isEqualTo("HELLO THERE");
+
+    // Unsatisfiable ranges are left out of the ones that can be served
+    request.setHeader(HttpHeaders.RANGE, "bytes=20-30,5-2,0-4");
+    response = makeRequest();
+    assertThat(response.getStatus()).isEqualTo(206);
+    assertThat(response.get(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 0-4/11");
+    assertThat(response.getContent()).isEqualTo("HELLO");
+  }
+
+  @Test
+  public void rejectsUnsatisfiableByteRanges() throws Exception {
+    // The start of the range is beyond the asset
+    request.setHeader(HttpHeaders.RANGE, "bytes=11-20");
+    response = makeRequest(RANGE_SERVLET + "example.txt");
+    assertThat(response.getStatus()).isEqualTo(416);
+    assertThat(response.get(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes */11");
+
+    // The range ends before it starts
+    request.setHeader(HttpHeaders.RANGE, "bytes=5-2");
+    response = makeRequest();
+    assertThat(response.getStatus()).isEqualTo(416);
+    assertThat(response.get(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes */11");
+
+    request.setHeader(HttpHeaders.RANGE, "bytes=-0");
+    response = makeRequest();
+    assertThat(response.getStatus()).isEqualTo(416);
+  }
+
   @Test
   public void supportsMultipleByteRanges() throws Exception {
     request.setHeader(HttpHeaders.RANGE, "bytes=0-0,-1");
-    response = makeRequest(ROOT_SERVLET + "assets/example.txt");
+    response = makeRequest(RANGE_SERVLET + "example.txt");
     assertThat(response.getStatus()).isEqualTo(206);
-    assertThat(response.getContent()).isEqualTo("HE");
     assertThat(response.get(HttpHeaders.ACCEPT_RANGES)).isEqualTo("bytes");
-    assertThat(response.get(HttpHeaders.CONTENT_RANGE)).isEqualTo(
-            "bytes 0-0,10-10/11");
-    assertThat(response.get(HttpHeaders.CONTENT_LENGTH)).isEqualTo("2");
+    assertThat(response.get(HttpHeaders.CONTENT_RANGE)).isNull();
+
+    String contentType = response.get(HttpHeaders.CONTENT_TYPE);
+    assertThat(contentType).startsWith("multipart/byteranges; boundary=");
+    String boundary = contentType.substring(contentType.indexOf('=') + 1);
+    assertThat(response.getContent()).isEqualTo(
+            "--" + boundary + "\r\n"
+            + "Content-Type: text/plain; charset=utf-8\r\n"
+            + "Content-Range: bytes 0-0/11\r\n"
+            + "\r\n"
+            + "H\r\n"
+            + "--" + boundary + "\r\n"
+            + "Content-Type: text/plain; charset=utf-8\r\n"
+            + "Content-Range: bytes 10-10/11\r\n"
+            + "\r\n"
+            + "E\r\n"
+            + "--" + boundary + "--\r\n");
+    assertThat(response.get(HttpHeaders.CONTENT_LENGTH))
+            .isEqualTo(String.valueOf(response.getContentBytes().length));
+
+    request.setHeader(HttpHeaders.RANGE, "bytes=7-10,0-1");
+    response = makeRequest();
+    assertThat(response.getStatus()).isEqualTo(206);
+    assertThat(response.getContent().indexOf("Content-Range: bytes 7-10/11\r\n\r\nHERE\r\n"))
+            .isLessThan(response.getContent().indexOf("Content-Range: bytes 0-1/11\r\n\r\nHE\r\n"))
+            .isNotNegative();
+    assertThat(response.get(HttpHeaders.CONTENT_LENGTH))
+            .isEqualTo(String.valueOf(response.getContentBytes().length));
+  }
+
+  @Test
+  public void writesLargeResponsesAsynchronously() throws Exception {
+    final String contents = Files.toString(
+            new File("src/test/resources/assets/compressible.txt"), Charsets.UTF_8);
+
+    response = makeRequest(ASYNC_SERVLET + "compressible.txt");
+    assertThat(response.getStatus()).isEqualTo(200);
+    assertThat(response.getContent()).isEqualTo(contents);
 
-    request.setHeader(HttpHeaders.RANGE, "bytes=5-6,7-10");
+    request.setHeader(HttpHeaders.RANGE, "bytes=100-299");
     response = makeRequest();
     assertThat(response.getStatus()).isEqualTo(206);
+    assertThat(response.getContent()).isEqualTo(contents.substring(100, 300));
+
+    request.setHeader(HttpHeaders.RANGE, "bytes=0-99,600-699");
+    response = makeRequest();
+    assertThat(response.getStatus()).isEqualTo(206);
+    assertThat(response.getContent())
+            .contains("Content-Range: bytes 0-99/720\r\n\r\n" + contents.substring(0, 100))
+            .contains("Content-Range: bytes 600-699/720\r\n\r\n" + contents.substring(600, 700));
+    assertThat(response.get(HttpHeaders.CONTENT_LENGTH))
+            .isEqualTo(String.valueOf(response.getContentBytes().length));
+
+    // Below the threshold
+    request.setHeader(HttpHeaders.RANGE, "bytes=0-1");
+    response = makeRequest();
+    assertThat(response.getContent()).isEqualTo(contents.substring(0, 2));
+  }
+
+  @Test
+  public void coalescesOverlappingAndNearbyByteRanges() throws Exception {
+    request.setHeader(HttpHeaders.RANGE, "bytes=7-10,5-6,6-8");
+    response = makeRequest(RANGE_SERVLET + "example.txt");
+    assertThat(response.getStatus()).isEqualTo(206);
     assertThat(response.getContent()).isEqualTo(" THERE");
-    assertThat(response.get(HttpHeaders.ACCEPT_RANGES)).isEqualTo("bytes");
-    assertThat(response.get(HttpHeaders.CONTENT_RANGE)).isEqualTo(
-            "bytes 5-6,7-10/11");
-    assertThat(response.get(HttpHeaders.CONTENT_LENGTH)).isEqualTo("6");
+    assertThat(response.get(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 5-10/11");
+
+    // Ranges closer together than the headers of another part are sent as one by default.
+    request.setHeader(HttpHeaders.RANGE, "bytes=0-0,-1");
+    response = makeRequest(ROOT_SERVLET + "assets/example.txt");
+    assertThat(response.getStatus()).isEqualTo(206);
+    assertThat(response.getContent()).isEqualTo("HELLO THERE");
+    assertThat(response.get(HttpHeaders.CONTENT_RANGE)).isEqualTo("bytes 0-10/11");
+  }
+
+  @Test
+  public void servesTheWholeAssetForTooManyByteRanges() throws Exception {
+    final MetricRegistry registry = new MetricRegistry();
+    rangePolicyServlet.registerMetrics(registry, "assets");
+
+    request.setHeader(HttpHeaders.RANGE, "bytes=0-0,2-2,4-4,6-6,8-8,3-3");
+    response = makeRequest(RANGE_SERVLET + "example.txt");
+    assertThat(response.getStatus()).isEqualTo(200);
+    assertThat(response.getContent()).isEqualTo("HELLO THERE");
+    assertThat(response.get(HttpHeaders.CONTENT_RANGE)).isNull();
+
+    request.setHeader(HttpHeaders.RANGE, "bytes=0-0,2-2,1-1");
+    response = makeRequest();
+    assertThat(response.getStatus()).isEqualTo(206);
+
+    assertThat(registry.meter("assets.ranges-over-limit").getCount()).isEqualTo(1);
+    assertThat(registry.meter("assets.ranges-coalesced").getCount()).isEqualTo(2);
   }
 
   @Test
@@ -365,6 +1339,27 @@ public class AssetServletTest {
     assertThat(statusWithNonMatchingEtag).isEqualTo(200);
   }
 
+  @Test
+  public void supportsIfRangeDates() throws Exception {
+    response = makeRequest();
+    final long lastModifiedTime = response.getDateField(HttpHeaders.LAST_MODIFIED);
+
+    request.setHeader(HttpHeaders.RANGE, "bytes=10-10");
+
+    request.putDateField(HttpHeaders.IF_RANGE, lastModifiedTime);
+    response = makeRequest();
+    assertThat(response.getStatus()).isEqualTo(206);
+
+    request.putDateField(HttpHeaders.IF_RANGE, lastModifiedTime - 1000);
+    response = makeRequest();
+    assertThat(response.getStatus()).isEqualTo(200);
+
+    // Weak tags never match If-Range
+    request.setHeader(HttpHeaders.IF_RANGE, "W/" + response.get(HttpHeaders.ETAG));
+    response = makeRequest();
+    assertThat(response.getStatus()).isEqualTo(200);
+  }
+
   @Test
   public void supportsIfModifiedSinceRequests() throws Exception {
     response = makeRequest();
@@ -1,10 +1,16 @@
 package io.dropwizard.bundles.assets;
 
 import com.google.common.cache.CacheBuilderSpec;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.health.HealthCheck;
+import com.codahale.metrics.health.HealthCheckRegistry;
 import com.google.common.collect.ImmutableMap;
 import io.dropwizard.jetty.setup.ServletEnvironment;
+import io.dropwizard.lifecycle.Managed;
+import io.dropwizard.lifecycle.setup.LifecycleEnvironment;
 import io.dropwizard.setup.Environment;
 import java.util.List;
+import java.util.Map;
 import javax.servlet.ServletRegistration;
 import org.junit.Before;
 import org.junit.Test;
@@ -22,6 +28,9 @@ import static org.mockito.Mockito.when;
 public class AssetsBundleTest {
   private final ServletEnvironment servletEnvironment = mock(ServletEnvironment.class);
   private final Environment environment = mock(Environment.class);
+  private final LifecycleEnvironment lifecycleEnvironment = mock(LifecycleEnvironment.class);
+  private final HealthCheckRegistry healthChecks = mock(HealthCheckRegistry.class);
+  private final MetricRegistry metrics = new MetricRegistry();
 
   private final AssetsBundleConfiguration defaultConfiguration = new AssetsBundleConfiguration() {
     @Override
@@ -37,6 +46,9 @@ public class AssetsBundleTest {
   @Before
   public void setUp() throws Exception {
     when(environment.servlets()).thenReturn(servletEnvironment);
+    when(environment.lifecycle()).thenReturn(lifecycleEnvironment);
+    when(environment.healthChecks()).thenReturn(healthChecks);
+    when(environment.metrics()).thenReturn(metrics);
   }
 
   @Test
@@ -124,6 +136,132 @@ public class AssetsBundleTest {
     assertThat(servlet.getCacheSpec()).isEqualTo(CacheBuilderSpec.parse(cacheSpec));
   }
 
+  @Test
+  public void usesGuavaCacheEngineByDefault() throws Exception {
+    runBundle(new ConfiguredAssetsBundle());
+    assertThat(servlet.getCacheEngine()).isEqualTo(AssetCacheEngine.GUAVA);
+  }
+
+  @Test
+  public void usesDefaultMissingAssetCacheSpec() throws Exception {
+    runBundle(new ConfiguredAssetsBundle());
+    assertThat(servlet.getMissingAssetCacheSpec())
+            .isEqualTo(ConfiguredAssetsBundle.DEFAULT_MISSING_ASSET_CACHE_SPEC);
+  }
+
+  @Test
+  public void canOverrideMissingAssetCacheSpec() throws Exception {
+    final String cacheSpec = "maximumSize=10,expireAfterWrite=1m";
+
+    AssetsBundleConfiguration config = new AssetsBundleConfiguration() {
+      @Override
+      public AssetsConfiguration getAssetsConfiguration() {
+        return new AssetsConfiguration() {
+          @Override
+          public String getMissingAssetCacheSpec() {
+            return cacheSpec;
+          }
+        };
+      }
+    };
+
+    runBundle(new ConfiguredAssetsBundle(), "assets", config);
+    assertThat(servlet.getMissingAssetCacheSpec()).isEqualTo(CacheBuilderSpec.parse(cacheSpec));
+  }
+
+  @Test
+  public void registersCacheMetrics() throws Exception {
+    runBundle(new ConfiguredAssetsBundle());
+
+    final String prefix = MetricRegistry.name(AssetServlet.class, "assets");
+    assertThat(metrics.getMeters()).containsKeys(prefix + ".hits", prefix + ".misses");
+    assertThat(metrics.getTimers()).containsKey(prefix + ".loads");
+    assertThat(metrics.getCounters()).containsKey(prefix + ".evictions");
+    assertThat(metrics.getGauges()).containsKeys(prefix + ".entries", prefix + ".weight");
+  }
+
+  @Test
+  public void watchesOverridesWhenConfigured() throws Exception {
+    AssetsBundleConfiguration config = new AssetsBundleConfiguration() {
+      @Override
+      public AssetsConfiguration getAssetsConfiguration() {
+        return new AssetsConfiguration() {
+          @Override
+          public OverrideWatchMode getOverrideWatchMode() {
+            return OverrideWatchMode.WATCH;
+          }
+
+          @Override
+          public Map<String, String> getOverrides() {
+            return ImmutableMap.of("/assets/override/", "src/test/resources/json/");
+          }
+        };
+      }
+    };
+
+    runBundle(new ConfiguredAssetsBundle(), "assets", config);
+
+    final ArgumentCaptor<Managed> managedCaptor = ArgumentCaptor.forClass(Managed.class);
+    verify(lifecycleEnvironment).manage(managedCaptor.capture());
+    assertThat(managedCaptor.getValue()).isInstanceOf(OverrideWatcher.class);
+  }
+
+  @Test
+  public void mapsTheManifestPath() throws Exception {
+    AssetsBundleConfiguration config = new AssetsBundleConfiguration() {
+      @Override
+      public AssetsConfiguration getAssetsConfiguration() {
+        return new AssetsConfiguration() {
+          @Override
+          public boolean isFingerprint() {
+            return true;
+          }
+
+          @Override
+          public String getManifestPath() {
+            return "/assets-manifest.json";
+          }
+        };
+      }
+    };
+
+    ConfiguredAssetsBundle bundle = new ConfiguredAssetsBundle();
+    runBundle(bundle, "assets", config);
+
+    assertThat(servletPaths)
+            .containsOnly("/assets/*", "/assets-manifest.json");
+    assertThat(servlet.getManifestPath())
+            .isEqualTo("/assets-manifest.json");
+    assertThat(bundle.getUrlResolver().resolve("/assets/example.txt"))
+            .matches("/assets/example\\.[0-9a-f]{12}\\.txt");
+  }
+
+  @Test
+  public void canWarmUpAssets() throws Exception {
+    AssetsBundleConfiguration config = new AssetsBundleConfiguration() {
+      @Override
+      public AssetsConfiguration getAssetsConfiguration() {
+        return new AssetsConfiguration() {
+          @Override
+          public boolean isWarmUp() {
+            return true;
+          }
+        };
+      }
+    };
+
+    runBundle(new ConfiguredAssetsBundle(), "assets", config);
+
+    final ArgumentCaptor<Managed> managedCaptor = ArgumentCaptor.forClass(Managed.class);
+    final ArgumentCaptor<HealthCheck> checkCaptor = ArgumentCaptor.forClass(HealthCheck.class);
+    verify(lifecycleEnvironment).manage(managedCaptor.capture());
+    verify(healthChecks).register(eq("assets-warmup"), checkCaptor.capture());
+
+    assertThat(checkCaptor.getValue().execute().isHealthy()).isFalse();
+    managedCaptor.getValue().start();
+    assertThat(checkCaptor.getValue().execute().isHealthy()).isTrue();
+  }
+
   private void runBundle(ConfiguredAssetsBundle bundle) throws Exception {
     runBundle(bundle, "assets", defaultConfiguration);
   }